@@ -45,6 +45,8 @@ public class CentralizedTemplate implements CentralizedBehavior {
 	private Agent agent;
 	private long timeout_setup;
 	private long timeout_plan;
+	// plan of a vehicle after a move, reused when evaluating the neighbours
+	private Movement[] planBuffer;
 
 	public static int nbTasks;
 	public static int nbVehicles;
@@ -79,6 +81,7 @@ public class CentralizedTemplate implements CentralizedBehavior {
 		nbTasks = tasks.size();
 		nbVehicles = allVehicles.size();
 		vehicles = allVehicles;
+		planBuffer = new Movement[2 * nbTasks];
 
 		// Compute the centralized plan
 		ArrayList<LinkedList<Movement>> vehiclePlans = computeSLS(allVehicles, tasks);
@@ -171,7 +174,7 @@ public class CentralizedTemplate implements CentralizedBehavior {
 
 				Random random = new Random();
 				int r = random.nextInt(100);
-				ArrayList<SolutionState> neighbours = null;
+				ArrayList<Move> neighbours = null;
 				// Decide if we keep the old state or not
 				// If not, compute neighbours and choose one
 				if (r < p * 100) {
@@ -181,7 +184,7 @@ public class CentralizedTemplate implements CentralizedBehavior {
 						System.out.println("No neighbours"); // should never
 																// happen
 					}
-					bestState = localChoice(neighbours, bestState.getCost());
+					bestState = localChoice(neighbours, bestState);
 					if (bestState == null) {
 						bestState = oldState;
 					}
@@ -339,10 +342,9 @@ public class CentralizedTemplate implements CentralizedBehavior {
 	}
 
 	// We create neighbours of a state following the idea of the paper
-	private ArrayList<SolutionState> chooseNeighbours(SolutionState oldState, List<Vehicle> vehicles) {
-		ArrayList<SolutionState> neighbours = new ArrayList<SolutionState>();
+	private ArrayList<Move> chooseNeighbours(SolutionState oldState, List<Vehicle> vehicles) {
+		ArrayList<Move> neighbours = new ArrayList<Move>();
 		Movement[] nextMovementsVehicle = oldState.getNextMovementsVehicle();
-		SolutionState ss;
 
 		// pick a random vehicle
 		Random ran = new Random();
@@ -360,20 +362,14 @@ public class CentralizedTemplate implements CentralizedBehavior {
 				m = nextMovementsVehicle[vehicle.id()];
 				if (m != null) {
 					if (m.getTask().weight < v.capacity()) {
-						ss = changingVehicle(oldState, vehicle, v);
-						neighbours.add(ss);
+						neighbours.add(Move.changingVehicle(vehicle.id(), v.id()));
 
 						// All possible positions for the moved task in its new
 						// vehicle
-						SolutionState ss2;
-						LinkedList<Movement> plan = ss.getPlans().get(v.id());
-						int size = plan.size();
+						int size = oldState.getPlanArray(v.id()).length + 2;
 						for (int i = 2; i < size - 1; i++) {
 							for (int j = i + 1; j < size; j++) {
-								ss2 = changingTaskOrder(ss, v, 0, 1, i, j);
-								if (ss2 != null) {
-									neighbours.add(ss2);
-								}
+								neighbours.add(Move.changingVehicle(vehicle.id(), v.id(), i, j));
 							}
 						}
 					}
@@ -383,18 +379,18 @@ public class CentralizedTemplate implements CentralizedBehavior {
 
 		// apply changing task order operator:
 		Movement pMov, dMov;
-		LinkedList<Movement> plan = oldState.getPlans().get(vehicle.id());
-		int size = plan.size();
+		Movement[] plan = oldState.getPlanArray(vehicle.id());
+		int size = plan.length;
 		if (size > 2) {
 			for (int k = 0; k < size - 1; k++) {
 				// select a pickup movement
-				pMov = plan.get(k);
+				pMov = plan[k];
 				if (pMov.getAction() == Action.PICKUP) {
 					// find the corresponding deliver movement
-					dMov = plan.get(k + 1);
+					dMov = plan[k + 1];
 					int kk = k + 2;
 					while (dMov.getTask().id != pMov.getTask().id && kk < size) {
-						dMov = plan.get(kk);
+						dMov = plan[kk];
 						kk++;
 					}
 					if (dMov.getTask().id != pMov.getTask().id) {
@@ -408,10 +404,7 @@ public class CentralizedTemplate implements CentralizedBehavior {
 						for (int i = 0; i < size - 1; i++) {
 							for (int j = i + 1; j < size; j++) {
 								if (i != k || j != kk - 1) {
-									ss = changingTaskOrder(oldState, vehicle, k, kk - 1, i, j);
-									if (ss != null) {
-										neighbours.add(ss);
-									}
+									neighbours.add(Move.changingTaskOrder(vehicle.id(), k, kk - 1, i, j));
 								}
 							}
 						}
@@ -424,15 +417,15 @@ public class CentralizedTemplate implements CentralizedBehavior {
 	}
 
 	/**
-	 * Choose the next best solution
+	 * Choose the next best solution. The cost and the constraints of each move
+	 * are evaluated on the old state, only the chosen move is built.
 	 * 
-	 * @param old
 	 * @param neighbours
-	 * @param probability
+	 * @param oldState
 	 * @return
 	 */
-	private SolutionState localChoice(ArrayList<SolutionState> neighbours, double oldBestCost) {
-		SolutionState bestSolution = null;
+	private SolutionState localChoice(ArrayList<Move> neighbours, SolutionState oldState) {
+		Move bestMove = null;
 
 		if (neighbours == null || neighbours.isEmpty()) {
 			System.err.println("Neighbours should not be null !");
@@ -440,139 +433,32 @@ public class CentralizedTemplate implements CentralizedBehavior {
 		}
 
 		double bestCost = Double.MAX_VALUE;
-		ArrayList<SolutionState> bestSolutions = new ArrayList<SolutionState>();
+		ArrayList<Move> bestMoves = new ArrayList<Move>();
 
 		double cost;
-		for (SolutionState neighbour : neighbours) {
-			cost = neighbour.getCost();
+		for (Move neighbour : neighbours) {
+			cost = neighbour.cost(oldState, planBuffer);
 			if (cost <= bestCost) {
-				if (Constraints.checkSolutionState(neighbour) != 0) {
+				if (neighbour.checkConstraints(oldState, planBuffer) != 0) {
 					continue;
 				}
 				if (cost < bestCost) {
-					bestSolutions.clear();
+					bestMoves.clear();
 					bestCost = cost;
 				}
-				bestSolutions.add(neighbour);
+				bestMoves.add(neighbour);
 			}
 		}
 
-		if (bestSolutions.size() > 1) {
+		if (bestMoves.size() > 1) {
 			// random number to select a best solution
 			Random ran = new Random();
-			int x = ran.nextInt(bestSolutions.size());
-			bestSolution = bestSolutions.get(x);
-		} else {
-			bestSolution = bestSolutions.get(0);
-		}
-
-		return bestSolution;
-	}
-
-	/**
-	 * Remove a task from the plan of vehicle v1 Append the task at the
-	 * beginning of the vehicle v2
-	 * 
-	 * @param oldState
-	 * @param v1
-	 * @param v2
-	 * @return state following from this exchange
-	 */
-	private SolutionState changingVehicle(SolutionState oldState, Vehicle v1, Vehicle v2) {
-		Movement[] nextMovementsVehicle = oldState.getNextMovementsVehicle();
-		Movement[] nextMovements = oldState.getNextMovements();
-
-		Movement m1 = nextMovementsVehicle[v1.id()];		
-		Movement m1Deliver = null;
-		Movement m2 = nextMovementsVehicle[v2.id()];
-
-		Movement m1Next = nextMovements[m1.getId()];
-		if (m1Next.getAction() == Action.DELIVER) {
-			// deliver m1 right after having it picked up
-			m1Deliver = m1Next;
-			m1Next = nextMovements[m1Next.getId()];
-		} else {
-			// deliver m1 after pickup other tasks
-			Movement prev = m1Next;
-			Movement current = nextMovements[m1Next.getId()];
-			while (current != null && !current.getTask().equals(m1.getTask())) {
-				prev = current;
-				current = nextMovements[current.getId()];
-			}
-			if (current != null) {
-				// remove delivery of m1 from v1's plan
-				Movement next = nextMovements[current.getId()];
-				nextMovements[prev.getId()] = next;
-				m1Deliver = current;
-			} else {
-				System.out.println("Deliver not found for task " + m1.getTask().id + " in changingVehicle().");
-			}
-		}
-
-		// remove m1 from the plan for vehicle v1
-		// append m1 to the beginning of the plan for vehicle v2
-		if (m1Next != null) {
-			nextMovementsVehicle[v1.id()] = m1Next;
+			int x = ran.nextInt(bestMoves.size());
+			bestMove = bestMoves.get(x);
 		} else {
-			nextMovementsVehicle[v1.id()] = null;
+			bestMove = bestMoves.get(0);
 		}
-		nextMovements[m1.getId()] = m1Deliver;
-		nextMovements[m1Deliver.getId()] = m2;
-		nextMovementsVehicle[v2.id()] = m1;
 
-		return new SolutionState(nextMovements, nextMovementsVehicle);
-	}
-
-	/**
-	 * In oldState, for vehicle, move pickup action at position pikcupIdx to
-	 * position pickupNextIdx and deliver action at position deliverIdx to
-	 * position deliverNextIdx
-	 * 
-	 * @param oldState
-	 * @param vehicle
-	 * @param pickupIdx
-	 * @param deliverIdx
-	 * @param pickupNextIdx
-	 * @param deliverNextIdx
-	 * @return the computed SolutionState
-	 */
-	@SuppressWarnings("unchecked")
-	private SolutionState changingTaskOrder(SolutionState oldState, Vehicle vehicle, int pickupIdx, int deliverIdx,
-			int pickupNextIdx, int deliverNextIdx) {
-		Movement[] nextVehicleMovement = oldState.getNextMovementsVehicle();
-		Movement[] nextMovement = oldState.getNextMovements();
-		LinkedList<Movement> plan = (LinkedList<Movement>) oldState.getPlans().get(vehicle.id()).clone();
-
-		Movement deliverChanging = plan.get(deliverIdx);
-		Movement pickupChanging = plan.get(pickupIdx);
-
-		if (deliverIdx != deliverNextIdx) {
-			plan.remove(deliverIdx);
-			plan.add(deliverNextIdx, deliverChanging);
-		}
-		if (pickupIdx != pickupNextIdx) {
-			if (deliverNextIdx <= pickupIdx && deliverIdx != deliverNextIdx) {
-				plan.remove(pickupIdx + 1);
-			} else {
-				plan.remove(pickupIdx);
-			}
-			plan.add(pickupNextIdx, pickupChanging);
-		}
-
-		// creates a new state given the new plan
-		nextVehicleMovement[vehicle.id()] = plan.getFirst();
-		for (int i = 0; i < plan.size() - 1; i++) {
-			Movement mov = plan.get(i);
-			nextMovement[mov.getId()] = plan.get(i + 1);
-		}
-		nextMovement[plan.getLast().getId()] = null;
-
-		SolutionState solution = new SolutionState(nextMovement, nextVehicleMovement);
-
-		if (Constraints.checkVehicleLoad(solution, vehicle.id()) != 0) {
-			return null;
-		}
-
-		return solution;
+		return bestMove.apply(oldState, planBuffer);
 	}
 }
@@ -119,6 +119,57 @@ public final class Constraints {
 		return 0;
 	}
 
+	/**
+	 * Check a segment of the plan of a vehicle after a move, the movements
+	 * before and after it being unchanged: the load must stay within the
+	 * capacity and end as in the old plan, and the moved task must be picked up
+	 * before being delivered.
+	 * 
+	 * @param v
+	 * @param plan
+	 * @param from
+	 *            first index of the segment
+	 * @param to
+	 *            last index of the segment
+	 * @param startLoad
+	 *            load before the segment
+	 * @param endLoad
+	 *            load expected after the segment
+	 * @param task
+	 *            id of the moved task
+	 * @return the number of errors.
+	 */
+	public static int checkPlanSegment(int v, Movement[] plan, int from, int to, int startLoad, int endLoad,
+			int task) {
+		int capacity = CentralizedTemplate.vehicles.get(v).capacity();
+		int currentLoad = startLoad;
+		boolean pickedUp = false;
+		for (int i = from; i <= to; i++) {
+			Movement m = plan[i];
+			if (m.getAction() == Action.PICKUP) {
+				currentLoad += m.getTask().weight;
+				if (currentLoad > capacity) {
+					return 1;
+				}
+				if (m.getTask().id == task) {
+					pickedUp = true;
+				}
+			} else {
+				currentLoad -= m.getTask().weight;
+				if (currentLoad < 0) {
+					return 1;
+				}
+				if (m.getTask().id == task && !pickedUp) {
+					return 1;
+				}
+			}
+		}
+		if (currentLoad != endLoad) {
+			return 1;
+		}
+		return 0;
+	}
+
 	/**
 	 * Check that each action is done only once
 	 * 
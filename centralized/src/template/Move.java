@@ -0,0 +1,225 @@
+package template;
+
+/**
+ * A neighbour of a solution state, described by the operator that produces it
+ * and its arguments. Its cost is evaluated from the state without building the
+ * neighbour, which is only built by apply() for the chosen move.
+ * 
+ * - CHANGE_VEHICLE gives the first task of vehicle to otherVehicle, at the
+ * beginning of its plan, then optionally moves its pickup to pickupNextIdx and
+ * its delivery to deliverNextIdx.
+ * 
+ * - CHANGE_TASK_ORDER moves the pickup at pickupIdx to pickupNextIdx and the
+ * delivery at deliverIdx to deliverNextIdx in the plan of vehicle.
+ * 
+ * @author Cynthia Oeschger and Marc Schaer
+ */
+class Move {
+
+	enum Operator {
+		CHANGE_VEHICLE, CHANGE_TASK_ORDER
+	}
+
+	final Operator operator;
+	final int vehicle;
+	// vehicle receiving the task, -1 for CHANGE_TASK_ORDER
+	final int otherVehicle;
+	// reordering of a pickup and its delivery, -1 if none
+	final int pickupIdx;
+	final int deliverIdx;
+	final int pickupNextIdx;
+	final int deliverNextIdx;
+
+	private Move(Operator operator, int vehicle, int otherVehicle, int pickupIdx, int deliverIdx, int pickupNextIdx,
+			int deliverNextIdx) {
+		this.operator = operator;
+		this.vehicle = vehicle;
+		this.otherVehicle = otherVehicle;
+		this.pickupIdx = pickupIdx;
+		this.deliverIdx = deliverIdx;
+		this.pickupNextIdx = pickupNextIdx;
+		this.deliverNextIdx = deliverNextIdx;
+	}
+
+	static Move changingVehicle(int v1, int v2) {
+		return new Move(Operator.CHANGE_VEHICLE, v1, v2, -1, -1, -1, -1);
+	}
+
+	static Move changingVehicle(int v1, int v2, int pickupNextIdx, int deliverNextIdx) {
+		return new Move(Operator.CHANGE_VEHICLE, v1, v2, 0, 1, pickupNextIdx, deliverNextIdx);
+	}
+
+	static Move changingTaskOrder(int vehicle, int pickupIdx, int deliverIdx, int pickupNextIdx, int deliverNextIdx) {
+		return new Move(Operator.CHANGE_TASK_ORDER, vehicle, -1, pickupIdx, deliverIdx, pickupNextIdx, deliverNextIdx);
+	}
+
+	/**
+	 * @return the ids of the vehicles whose plan is changed by the move
+	 */
+	int[] changedVehicles() {
+		if (operator == Operator.CHANGE_VEHICLE) {
+			return new int[] { vehicle, otherVehicle };
+		}
+		return new int[] { vehicle };
+	}
+
+	/**
+	 * Total cost of the state after the move
+	 * 
+	 * @param state
+	 * @param buffer
+	 *            room for the longest plan after the move
+	 * @return
+	 */
+	double cost(SolutionState state, Movement[] buffer) {
+		double totalCost = 0;
+		for (int v = 0; v < CentralizedTemplate.nbVehicles; v++) {
+			if (v == vehicle || v == otherVehicle) {
+				int length = newPlan(state, v, buffer);
+				totalCost += SolutionState.computePlanCost(v, buffer, length);
+			} else {
+				totalCost += state.getVehicleCost(v);
+			}
+		}
+		return totalCost;
+	}
+
+	/**
+	 * Check the constraints on the plans changed by the move. Only the segment
+	 * of a plan between the moved pickup and delivery is checked, the loads
+	 * outside of it being the ones of the old plan. Removing a task from a
+	 * vehicle cannot break its plan, so only the plan receiving it is checked.
+	 * 
+	 * @param state
+	 * @param buffer
+	 *            room for the longest plan after the move
+	 * @return the number of errors.
+	 */
+	int checkConstraints(SolutionState state, Movement[] buffer) {
+		if (operator == Operator.CHANGE_TASK_ORDER) {
+			Movement[] plan = state.getPlanArray(vehicle);
+			int[] loads = state.getLoadPrefix(vehicle);
+			newPlan(state, vehicle, buffer);
+			int from = Math.min(Math.min(pickupIdx, pickupNextIdx), Math.min(deliverIdx, deliverNextIdx));
+			int to = Math.max(Math.max(pickupIdx, pickupNextIdx), Math.max(deliverIdx, deliverNextIdx));
+			return Constraints.checkPlanSegment(vehicle, buffer, from, to, loads[from], loads[to + 1],
+					plan[pickupIdx].getTask().id);
+		}
+
+		int[] loads = state.getLoadPrefix(otherVehicle);
+		newPlan(state, otherVehicle, buffer);
+		// the plan of otherVehicle is shifted by the two movements of the task
+		int to = pickupNextIdx < 0 ? 1 : Math.max(pickupNextIdx, deliverNextIdx);
+		return Constraints.checkPlanSegment(otherVehicle, buffer, 0, to, 0, loads[to - 1],
+				state.getPlanArray(vehicle)[0].getTask().id);
+	}
+
+	/**
+	 * Builds the state after the move
+	 * 
+	 * @param state
+	 * @param buffer
+	 *            room for the longest plan after the move
+	 * @return
+	 */
+	SolutionState apply(SolutionState state, Movement[] buffer) {
+		Movement[] nextMovements = state.getNextMovements();
+		Movement[] nextMovementsVehicle = state.getNextMovementsVehicle();
+		int[] changed = changedVehicles();
+		for (int v : changed) {
+			int length = newPlan(state, v, buffer);
+			nextMovementsVehicle[v] = length > 0 ? buffer[0] : null;
+			for (int i = 0; i < length; i++) {
+				nextMovements[buffer[i].getId()] = i + 1 < length ? buffer[i + 1] : null;
+			}
+		}
+		return new SolutionState(state, nextMovements, nextMovementsVehicle, changed);
+	}
+
+	/**
+	 * Writes the plan of a changed vehicle after the move
+	 * 
+	 * @param state
+	 * @param v
+	 *            vehicle or otherVehicle
+	 * @param buffer
+	 * @return the length of the plan
+	 */
+	int newPlan(SolutionState state, int v, Movement[] buffer) {
+		if (operator == Operator.CHANGE_TASK_ORDER) {
+			Movement[] plan = state.getPlanArray(v);
+			System.arraycopy(plan, 0, buffer, 0, plan.length);
+			return reorder(buffer, plan.length);
+		}
+
+		Movement[] plan = state.getPlanArray(vehicle);
+		Movement pickup = plan[0];
+		if (v == vehicle) {
+			// remove the first task and its delivery
+			int length = 0;
+			for (int i = 1; i < plan.length; i++) {
+				if (plan[i].getTask().id != pickup.getTask().id) {
+					buffer[length++] = plan[i];
+				}
+			}
+			return length;
+		}
+
+		// put the task at the beginning of the other vehicle
+		Movement deliver = null;
+		for (int i = 1; i < plan.length && deliver == null; i++) {
+			if (plan[i].getTask().id == pickup.getTask().id) {
+				deliver = plan[i];
+			}
+		}
+		Movement[] otherPlan = state.getPlanArray(otherVehicle);
+		buffer[0] = pickup;
+		buffer[1] = deliver;
+		System.arraycopy(otherPlan, 0, buffer, 2, otherPlan.length);
+		int length = otherPlan.length + 2;
+		return pickupNextIdx < 0 ? length : reorder(buffer, length);
+	}
+
+	/**
+	 * Moves the pickup and the delivery in a plan, like removing and inserting
+	 * them in a list: the delivery first, then the pickup
+	 * 
+	 * @param plan
+	 * @param length
+	 * @return the length of the plan
+	 */
+	private int reorder(Movement[] plan, int length) {
+		Movement deliverChanging = plan[deliverIdx];
+		Movement pickupChanging = plan[pickupIdx];
+
+		if (deliverIdx != deliverNextIdx) {
+			remove(plan, length, deliverIdx);
+			insert(plan, length - 1, deliverNextIdx, deliverChanging);
+		}
+		if (pickupIdx != pickupNextIdx) {
+			if (deliverNextIdx <= pickupIdx && deliverIdx != deliverNextIdx) {
+				remove(plan, length, pickupIdx + 1);
+			} else {
+				remove(plan, length, pickupIdx);
+			}
+			insert(plan, length - 1, pickupNextIdx, pickupChanging);
+		}
+		return length;
+	}
+
+	private static void remove(Movement[] plan, int length, int index) {
+		System.arraycopy(plan, index + 1, plan, index, length - index - 1);
+	}
+
+	private static void insert(Movement[] plan, int length, int index, Movement m) {
+		System.arraycopy(plan, index, plan, index + 1, length - index);
+		plan[index] = m;
+	}
+
+	@Override
+	public String toString() {
+		return "Move [operator=" + operator + ", vehicle=" + vehicle + ", otherVehicle=" + otherVehicle
+				+ ", pickupIdx=" + pickupIdx + ", deliverIdx=" + deliverIdx + ", pickupNextIdx=" + pickupNextIdx
+				+ ", deliverNextIdx=" + deliverNextIdx + "]";
+	}
+}
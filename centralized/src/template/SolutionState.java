@@ -11,6 +11,10 @@ import logist.topology.Topology.City;
  * This class represent a solution state composed by all actions to do and the
  * action after and a relation for each vehicle and their first action
  * 
+ * A neighbour state is built from its parent by recomputing only the vehicles
+ * changed by the move: the plans, times and costs of the other vehicles are
+ * taken from the parent.
+ * 
  * @author Cynthia Oeschger and Marc Schaer
  */
 public class SolutionState {
@@ -19,6 +23,12 @@ public class SolutionState {
 	private Movement[] nextMovementsVehicle;
 	private int[] timedMovements;
 	private ArrayList<LinkedList<Movement>> plans;
+	// cost of the plan of each vehicle
+	private double[] vehicleCosts;
+	// plans as arrays, built when a move is evaluated on this state
+	private Movement[][] planArrays;
+	// load of each vehicle before each movement of its plan
+	private int[][] loadPrefixes;
 	private double cost;
 
 	SolutionState(Movement[] nextMovements, Movement[] nextMovementsVehicle) {
@@ -29,22 +39,93 @@ public class SolutionState {
 		cost = -1;
 	}
 
+	/**
+	 * Creates a neighbour of a state where only some vehicles changed. The
+	 * arrays are not copied, the caller must not modify them afterwards.
+	 * 
+	 * @param parent
+	 * @param nextMovements
+	 * @param nextMovementsVehicle
+	 * @param changedVehicles
+	 *            ids of the vehicles whose plan differs from the parent
+	 */
+	SolutionState(SolutionState parent, Movement[] nextMovements, Movement[] nextMovementsVehicle,
+			int... changedVehicles) {
+		this.nextMovements = nextMovements;
+		this.nextMovementsVehicle = nextMovementsVehicle;
+		this.plans = new ArrayList<LinkedList<Movement>>(parent.plans);
+		this.timedMovements = parent.timedMovements.clone();
+		parent.getCost();
+		this.vehicleCosts = parent.vehicleCosts.clone();
+		for (int vehicle : changedVehicles) {
+			LinkedList<Movement> plan = computeVehiclePlan(vehicle);
+			plans.set(vehicle, plan);
+			int time = 1;
+			for (Movement m : plan) {
+				timedMovements[m.getId()] = time;
+				time++;
+			}
+			vehicleCosts[vehicle] = computeVehicleCost(vehicle);
+		}
+		this.cost = sumVehicleCosts();
+	}
+
 	/**
 	 * Compute the cost of this solution
 	 */
 	private void computeCost() {
-		double totalCost = 0;
+		vehicleCosts = new double[CentralizedTemplate.nbVehicles];
 		for (int vehicle = 0; vehicle < CentralizedTemplate.nbVehicles; vehicle++) {
-			double totalVehicleDistance = computeVehicleDistance(CentralizedTemplate.vehicles.get(vehicle),
-					nextMovementsVehicle[vehicle]);
-			LinkedList<Movement> currentPath = plans.get(vehicle);
-			for (int i = 0; i < currentPath.size() - 1; i++) {
-				Movement currentMovement = currentPath.get(i);
-				totalVehicleDistance += computeMovementsDistance(currentMovement, currentPath.get(i + 1));
+			vehicleCosts[vehicle] = computeVehicleCost(vehicle);
+		}
+		this.cost = sumVehicleCosts();
+	}
+
+	private double sumVehicleCosts() {
+		double totalCost = 0;
+		for (double vehicleCost : vehicleCosts) {
+			totalCost += vehicleCost;
+		}
+		return totalCost;
+	}
+
+	/**
+	 * Compute the cost of the plan of one vehicle
+	 * 
+	 * @param vehicle
+	 * @return
+	 */
+	private double computeVehicleCost(int vehicle) {
+		double totalVehicleDistance = computeVehicleDistance(CentralizedTemplate.vehicles.get(vehicle),
+				nextMovementsVehicle[vehicle]);
+		Movement previous = null;
+		for (Movement currentMovement : plans.get(vehicle)) {
+			if (previous != null) {
+				totalVehicleDistance += computeMovementsDistance(previous, currentMovement);
 			}
-			totalCost += (totalVehicleDistance * CentralizedTemplate.vehicles.get(vehicle).costPerKm());
+			previous = currentMovement;
+		}
+		return totalVehicleDistance * CentralizedTemplate.vehicles.get(vehicle).costPerKm();
+	}
+
+	/**
+	 * Compute the cost of a plan for one vehicle, the same way as
+	 * computeVehicleCost() does
+	 * 
+	 * @param vehicle
+	 * @param plan
+	 *            the movements of the plan, starting at index 0
+	 * @param length
+	 *            number of movements of the plan
+	 * @return
+	 */
+	static double computePlanCost(int vehicle, Movement[] plan, int length) {
+		double totalVehicleDistance = computeVehicleDistance(CentralizedTemplate.vehicles.get(vehicle),
+				length > 0 ? plan[0] : null);
+		for (int i = 1; i < length; i++) {
+			totalVehicleDistance += computeMovementsDistance(plan[i - 1], plan[i]);
 		}
-		this.cost = totalCost;
+		return totalVehicleDistance * CentralizedTemplate.vehicles.get(vehicle).costPerKm();
 	}
 
 	/**
@@ -55,7 +136,7 @@ public class SolutionState {
 	 * @param a
 	 * @return
 	 */
-	private double computeVehicleDistance(Vehicle v, Movement a) {
+	private static double computeVehicleDistance(Vehicle v, Movement a) {
 		if (a == null) {
 			return 0;
 		}
@@ -71,7 +152,7 @@ public class SolutionState {
 	 * @param b
 	 * @return
 	 */
-	private double computeMovementsDistance(Movement a, Movement b) {
+	private static double computeMovementsDistance(Movement a, Movement b) {
 		City cityTaskA;
 		City cityTaskB;
 
@@ -100,23 +181,28 @@ public class SolutionState {
 	private ArrayList<LinkedList<Movement>> computeVehiclePlans(SolutionState solutionState) {
 		ArrayList<LinkedList<Movement>> plans = new ArrayList<LinkedList<Movement>>();
 
-		Movement[] vehicleMovement = solutionState.getNextMovementsVehicle();
-		Movement[] movements = solutionState.getNextMovements();
-
 		for (int vehicle = 0; vehicle < CentralizedTemplate.nbVehicles; vehicle++) {
-			LinkedList<Movement> orderedMovements = new LinkedList<Movement>();
-
-			Movement next = vehicleMovement[vehicle];
-			while (next != null) {
-				orderedMovements.add(next);
-				next = movements[next.getId()];
-			}
-			plans.add(orderedMovements);
-			
+			plans.add(solutionState.computeVehiclePlan(vehicle));
 		}
 		return plans;
 	}
 
+	/**
+	 * Follows the movements of one vehicle
+	 * 
+	 * @param vehicle
+	 * @return the ordered movements of the vehicle
+	 */
+	private LinkedList<Movement> computeVehiclePlan(int vehicle) {
+		LinkedList<Movement> orderedMovements = new LinkedList<Movement>();
+		Movement next = nextMovementsVehicle[vehicle];
+		while (next != null) {
+			orderedMovements.add(next);
+			next = nextMovements[next.getId()];
+		}
+		return orderedMovements;
+	}
+
 	/**
 	 * Compute a HashMap of time for each action
 	 * 
@@ -204,4 +290,49 @@ public class SolutionState {
 	protected ArrayList<LinkedList<Movement>> getPlans() {
 		return plans;
 	}
+
+	/**
+	 * The plan of a vehicle as an array, that must not be modified
+	 * 
+	 * @param vehicle
+	 * @return
+	 */
+	protected Movement[] getPlanArray(int vehicle) {
+		if (planArrays == null) {
+			planArrays = new Movement[CentralizedTemplate.nbVehicles][];
+		}
+		if (planArrays[vehicle] == null) {
+			LinkedList<Movement> plan = plans.get(vehicle);
+			planArrays[vehicle] = plan.toArray(new Movement[plan.size()]);
+		}
+		return planArrays[vehicle];
+	}
+
+	/**
+	 * The load of a vehicle before each movement of its plan, the last element
+	 * being the load at the end of the plan. The array must not be modified.
+	 * 
+	 * @param vehicle
+	 * @return
+	 */
+	protected int[] getLoadPrefix(int vehicle) {
+		if (loadPrefixes == null) {
+			loadPrefixes = new int[CentralizedTemplate.nbVehicles][];
+		}
+		if (loadPrefixes[vehicle] == null) {
+			Movement[] plan = getPlanArray(vehicle);
+			int[] loads = new int[plan.length + 1];
+			for (int i = 0; i < plan.length; i++) {
+				int weight = plan[i].getTask().weight;
+				loads[i + 1] = loads[i] + (plan[i].getAction() == Action.PICKUP ? weight : -weight);
+			}
+			loadPrefixes[vehicle] = loads;
+		}
+		return loadPrefixes[vehicle];
+	}
+
+	protected double getVehicleCost(int vehicle) {
+		getCost();
+		return vehicleCosts[vehicle];
+	}
 }
@@ -0,0 +1,148 @@
+package template;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import logist.simulation.Vehicle;
+
+/**
+ * Anytime A* by restarting weighted A* with decreasing weights. The first
+ * search, with f = g + weight * h, quickly finds a plan costing at most weight
+ * times the optimal one; each following search lowers the weight and only
+ * looks for plans cheaper than the best one found so far. The best plan is
+ * optimal once a search with weight 1 reaches a goal, or once a search
+ * exhausts the states that could lead to a cheaper plan.
+ * 
+ * Every search stops at the deadline, the best plan found until then is kept.
+ * 
+ * @author Marc Schaer and Cynthia Oeschger
+ *
+ */
+class AnytimeAstar {
+
+	// Weights closer to 1 than this are rounded to 1
+	private static final double MIN_WEIGHT_DECREASE = 0.05;
+	// The deadline is checked every DEADLINE_CHECK expansions
+	private static final int DEADLINE_CHECK = 256;
+
+	private final Vehicle vehicle;
+	private final double initialWeight;
+	// Estimations are shared by all the searches
+	private final HeuristicCache estimates;
+	private Path incumbent;
+	private double incumbentWeight;
+	// true when no path cheaper than the incumbent is left
+	private boolean optimal;
+	private int expansions;
+
+	public AnytimeAstar(Vehicle vehicle, Heuristic heuristic, double initialWeight) {
+		this.vehicle = vehicle;
+		this.initialWeight = Math.max(1, initialWeight);
+		this.estimates = new HeuristicCache(heuristic);
+	}
+
+	/**
+	 * Improves the plan until it is optimal or the deadline is reached
+	 * 
+	 * @param init
+	 *            initial state
+	 * @param deadline
+	 *            in milliseconds, as given by System.currentTimeMillis()
+	 * @return the states of the best path found, null if none was found in
+	 *         time
+	 */
+	public LinkedList<State> search(State init, long deadline) {
+		long startTime = System.currentTimeMillis();
+		incumbent = null;
+		incumbentWeight = Double.MAX_VALUE;
+		expansions = 0;
+		optimal = false;
+
+		double weight = initialWeight;
+		while (true) {
+			boolean completed = weightedSearch(init, weight, deadline);
+			if (completed) {
+				incumbentWeight = optimal ? 1 : weight;
+			}
+			System.out.println("Anytime A*: weight " + weight + (completed ? "" : " (interrupted)") + ", distance "
+					+ (incumbent == null ? "-" : String.valueOf(incumbent.getTravelDistance())) + " after "
+					+ (System.currentTimeMillis() - startTime) + " ms");
+			if (!completed || optimal || weight == 1) {
+				break;
+			}
+			weight = 1 + (weight - 1) / 2;
+			if (weight - 1 < MIN_WEIGHT_DECREASE) {
+				weight = 1;
+			}
+		}
+		return incumbent == null ? null : incumbent.getStates();
+	}
+
+	/**
+	 * One weighted A* search looking for a path cheaper than the incumbent. It
+	 * stops at the first goal reached
+	 * 
+	 * @param init
+	 * @param weight
+	 * @param deadline
+	 * @return false if the search was interrupted by the deadline
+	 */
+	private boolean weightedSearch(State init, final double weight, long deadline) {
+		PathQueue queue = new PathQueue(new Comparator<Path>() {
+			@Override
+			public int compare(Path o1, Path o2) {
+				return Double.compare(o1.getTravelDistance() + weight * o1.getExpectedFutureDistance(),
+						o2.getTravelDistance() + weight * o2.getExpectedFutureDistance());
+			}
+		});
+		queue.add(new Path(init, estimates));
+		HashMap<State, Double> visitedStates = new HashMap<State, Double>();
+
+		while (!queue.isEmpty()) {
+			Path currentPath = queue.poll();
+			State currentState = currentPath.getState();
+			double distance = currentPath.getTravelDistance();
+
+			Double knownDistance = visitedStates.get(currentState);
+			if (knownDistance != null && distance >= knownDistance) {
+				continue;
+			}
+			visitedStates.put(currentState, distance);
+			if (++expansions % DEADLINE_CHECK == 0 && System.currentTimeMillis() >= deadline) {
+				return false;
+			}
+
+			if (currentState.isGoal()) {
+				// children are pruned when they cannot beat the incumbent
+				incumbent = currentPath;
+				return true;
+			}
+			for (State s : currentState.computeChildren(vehicle)) {
+				Path childPath = new Path(s, currentPath, estimates);
+				double bound = childPath.getTravelDistance() + childPath.getExpectedFutureDistance();
+				if (incumbent != null && bound >= incumbent.getTravelDistance()) {
+					continue;
+				}
+				Double knownChildDistance = visitedStates.get(s);
+				if (knownChildDistance == null || childPath.getTravelDistance() < knownChildDistance) {
+					queue.add(childPath);
+				}
+			}
+		}
+		optimal = true;
+		return true;
+	}
+
+	/**
+	 * @return the weight of the last search that completed, the cost of the
+	 *         best path is at most this times the optimal cost
+	 */
+	public double getBound() {
+		return incumbentWeight;
+	}
+
+	public int getExpansions() {
+		return expansions;
+	}
+}
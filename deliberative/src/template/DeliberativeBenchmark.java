@@ -0,0 +1,169 @@
+package template;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import logist.agent.Agent;
+import logist.plan.Plan;
+import logist.simulation.Vehicle;
+import logist.task.Task;
+import logist.task.TaskDistribution;
+import logist.task.TaskSet;
+import logist.topology.Topology;
+
+/**
+ * Benchmark of the planning algorithms. On its first plan, the agent measures
+ * each algorithm on the first n tasks of the simulation, for several n, then
+ * plans as a DeliberativeTemplate. The topology and the tasks come from the
+ * simulation configuration, so the fixtures are reproducible through the
+ * rngSeed of the tasks.
+ * 
+ * For each algorithm and number of tasks, the plan is computed a few times to
+ * warm up the JVM, then measured: mean and minimal latency, number of expanded
+ * states and bytes allocated by the planning thread. The parallel A* allocates
+ * on the threads of its executor, even with a single worker, so its
+ * allocations are reported as n/a.
+ * 
+ * @author Marc Schaer and Cynthia Oeschger
+ *
+ */
+public class DeliberativeBenchmark extends DeliberativeTemplate {
+
+	private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+	});
+
+	/* the properties of the benchmark */
+	Algorithm[] benchmarkAlgorithms;
+	int[] taskCounts;
+	int warmup;
+	int iterations;
+	boolean done;
+
+	@Override
+	public void setup(Topology topology, TaskDistribution td, Agent agent) {
+		super.setup(topology, td, agent);
+
+		String[] names = agent.readProperty("benchmark-algorithms", String.class, "ASTAR,BFS,NAIVE").split(",");
+		benchmarkAlgorithms = new Algorithm[names.length];
+		for (int i = 0; i < names.length; i++) {
+			// Throws IllegalArgumentException if algorithm is unknown
+			benchmarkAlgorithms[i] = Algorithm.valueOf(names[i].trim().toUpperCase());
+		}
+		String[] counts = agent.readProperty("benchmark-task-counts", String.class, "2,4,6,8").split(",");
+		taskCounts = new int[counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			taskCounts[i] = Integer.parseInt(counts[i].trim());
+		}
+		warmup = agent.readProperty("benchmark-warmup", Integer.class, 2);
+		iterations = agent.readProperty("benchmark-iterations", Integer.class, 5);
+		done = false;
+	}
+
+	@Override
+	public Plan plan(Vehicle vehicle, TaskSet tasks) {
+		if (!done) {
+			done = true;
+			runBenchmark(vehicle, tasks);
+		}
+		return super.plan(vehicle, tasks);
+	}
+
+	/**
+	 * Measures every algorithm on subsets of the tasks and prints the results
+	 * 
+	 * @param vehicle
+	 * @param tasks
+	 */
+	private void runBenchmark(Vehicle vehicle, TaskSet tasks) {
+		System.out.println("Benchmark (" + warmup + " warm-up and " + iterations + " measured plans):");
+		System.out.println(String.format("%-14s %5s %12s %12s %12s %12s %10s", "algorithm", "tasks", "mean (ms)",
+				"min (ms)", "expansions", "alloc (MB)", "MB/s"));
+		for (Algorithm a : benchmarkAlgorithms) {
+			for (int n : taskCounts) {
+				if (n > tasks.size()) {
+					continue;
+				}
+				TaskSet subset = TaskSet.noneOf(tasks);
+				for (Task t : tasks) {
+					if (subset.size() < n) {
+						subset.add(t);
+					}
+				}
+				measure(a, vehicle, subset);
+			}
+		}
+		for (Algorithm a : benchmarkAlgorithms) {
+			if (plansOnWorkerThreads(a)) {
+				System.out.println("n/a: " + a + " allocates on its worker threads, which are not measured");
+			}
+		}
+	}
+
+	/**
+	 * Tells if an algorithm plans on other threads than the calling one, whose
+	 * allocations are the only ones measured
+	 * 
+	 * @param a
+	 * @return
+	 */
+	private boolean plansOnWorkerThreads(Algorithm a) {
+		return a == Algorithm.PARALLEL_ASTAR;
+	}
+
+	/**
+	 * Measures one algorithm on one set of tasks, each plan being computed by
+	 * a new planner
+	 * 
+	 * @param a
+	 * @param vehicle
+	 * @param tasks
+	 */
+	private void measure(Algorithm a, Vehicle vehicle, TaskSet tasks) {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		boolean allocations = threadBean instanceof com.sun.management.ThreadMXBean && !plansOnWorkerThreads(a);
+		long threadId = Thread.currentThread().getId();
+
+		long totalTime = 0;
+		long minTime = Long.MAX_VALUE;
+		long totalBytes = 0;
+		int planExpansions = 0;
+		PrintStream out = System.out;
+		System.setOut(DISCARD);
+		try {
+			for (int i = 0; i < warmup + iterations; i++) {
+				DeliberativeTemplate planner = new DeliberativeTemplate();
+				planner.setup(topology, td, agent);
+				planner.algorithm = a;
+
+				long bytes = allocations ? ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(threadId) : 0;
+				long startTime = System.nanoTime();
+				planner.plan(vehicle, tasks);
+				long time = System.nanoTime() - startTime;
+				if (allocations) {
+					bytes = ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(threadId) - bytes;
+				}
+
+				if (i >= warmup) {
+					totalTime += time;
+					minTime = Math.min(minTime, time);
+					totalBytes += bytes;
+					planExpansions = planner.expansions;
+				}
+			}
+		} finally {
+			System.setOut(out);
+		}
+
+		String unmeasured = plansOnWorkerThreads(a) ? "n/a" : "-";
+		double megabytes = totalBytes / (1024.0 * 1024.0) / iterations;
+		System.out.println(String.format("%-14s %5d %12.2f %12.2f %12d %12s %10s", a, tasks.size(),
+				totalTime / 1e6 / iterations, minTime / 1e6, planExpansions,
+				allocations ? String.format("%.2f", megabytes) : unmeasured,
+				allocations ? String.format("%.1f", megabytes / (totalTime / 1e9 / iterations)) : unmeasured));
+	}
+}
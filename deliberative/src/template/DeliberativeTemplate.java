@@ -13,6 +13,8 @@ import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
+import logist.LogistPlatform;
+import logist.LogistSettings;
 import logist.agent.Agent;
 import logist.behavior.DeliberativeBehavior;
 import logist.plan.Plan;
@@ -29,16 +31,20 @@ import logist.topology.Topology.City;
 public class DeliberativeTemplate implements DeliberativeBehavior {
 
 	enum Algorithm {
-		BFS, ASTAR, NAIVE
+		BFS, ASTAR, PARALLEL_ASTAR, ANYTIME_ASTAR, IDASTAR, NAIVE
 	}
 
+	// Share of the plan timeout given to the anytime search, the rest is kept
+	// to build the plan
+	private static final double PLAN_TIME_FRACTION = 0.9;
+
 	/* Environment */
 	Topology topology;
 	TaskDistribution td;
 	List<City> cities;
+	DistanceTable distances;
 	Vehicle vehicle;
 	State initialState;
-	ArrayList<State> goalStates;
 	ArrayList<Task> carriedTasks;
 
 	/* the properties of the agent */
@@ -47,6 +53,27 @@ public class DeliberativeTemplate implements DeliberativeBehavior {
 
 	/* the planning class */
 	Algorithm algorithm;
+	Heuristic heuristic;
+	// run A* with every heuristic and print their number of expansions
+	boolean compareHeuristics;
+	// number of states expanded by the last search
+	int expansions;
+	// number of workers of the parallel A*
+	int threads;
+	// also run the sequential A* and print the speed-up of the parallel one
+	boolean reportSpeedup;
+	// initial weight of the heuristic in the anytime A*
+	double anytimeWeight;
+	// the plan method cannot execute more than timeoutPlan milliseconds
+	long timeoutPlan;
+	// time by which the anytime A* must return its best plan
+	long planDeadline;
+	// maximum number of states kept in memory by the IDA* and the search
+	// memory
+	int memoryBudget;
+	// reuse what the previous A* searches learned when replanning
+	boolean incrementalReplanning;
+	SearchMemory memory;
 
 	/* comparators */
 	final StateDistanceComparator sComparator = new StateDistanceComparator();
@@ -58,6 +85,7 @@ public class DeliberativeTemplate implements DeliberativeBehavior {
 		this.td = td;
 		this.agent = agent;
 		this.cities = topology.cities();
+		this.distances = new DistanceTable(cities);
 
 		// initialize the planner
 		int capacity = agent.vehicles().get(0).capacity();
@@ -67,30 +95,54 @@ public class DeliberativeTemplate implements DeliberativeBehavior {
 
 		// Throws IllegalArgumentException if algorithm is unknown
 		algorithm = Algorithm.valueOf(algorithmName.toUpperCase());
+		String heuristicName = agent.readProperty("heuristic", String.class, "MST");
+		heuristic = Heuristic.valueOf(heuristicName.toUpperCase());
+		compareHeuristics = agent.readProperty("compare-heuristics", Boolean.class, false);
+		threads = agent.readProperty("threads", Integer.class, Runtime.getRuntime().availableProcessors());
+		reportSpeedup = agent.readProperty("report-speedup", Boolean.class, false);
+		anytimeWeight = agent.readProperty("anytime-weight", Double.class, 3.0);
+		incrementalReplanning = agent.readProperty("incremental-replanning", Boolean.class, true);
+		memoryBudget = agent.readProperty("memory-budget", Integer.class, 1000000);
+
+		// this code is used to get the timeouts
+		LogistSettings ls = null;
+		try {
+			ls = LogistPlatform.getSettings();
+		} catch (Exception exc) {
+			System.out.println("There is a problem loading the configuration file.");
+		}
+		timeoutPlan = ls == null ? Long.MAX_VALUE : ls.get(LogistSettings.TimeoutKey.PLAN);
 
 		initialState = null;
-		goalStates = new ArrayList<State>();
 		carriedTasks = new ArrayList<Task>();
+		memory = null;
 	}
 
 	@Override
 	public Plan plan(Vehicle vehicle, TaskSet tasks) {
 		Plan plan;
+		planDeadline = System.currentTimeMillis() + (long) (timeoutPlan * PLAN_TIME_FRACTION);
+		expansions = 0;
 
 		// initial state:
 		initialState = setInitialState(vehicle, tasks);
 		System.out.println(tasks.toString());
 
-		// goal states:
-		goalStates = setGoalStates(vehicle, tasks);
-		System.out.println(goalStates.toString());
-
 		long startTime = new Date().getTime();
 		
 		switch (algorithm) {
 		case ASTAR:
 			plan = aStarPlan(vehicle, tasks);
 			break;
+		case PARALLEL_ASTAR:
+			plan = parallelAStarPlan(vehicle, tasks);
+			break;
+		case ANYTIME_ASTAR:
+			plan = anytimeAStarPlan(vehicle, tasks);
+			break;
+		case IDASTAR:
+			plan = idaStarPlan(vehicle, tasks);
+			break;
 		case BFS:
 			plan = bfsPlan(vehicle, tasks);
 			break;
@@ -123,52 +175,146 @@ public class DeliberativeTemplate implements DeliberativeBehavior {
 		ArrayList<Task> takenTasks = new ArrayList<Task>();
 		takenTasks.addAll(vehicle.getCurrentTasks());
 
-		return new State(vehicle.getCurrentCity(), availableTasks, takenTasks, new ArrayList<Task>());
+		ArrayList<Task> allTasks = new ArrayList<Task>(availableTasks);
+		allTasks.addAll(takenTasks);
+		TaskIndex index;
+		if (!incrementalReplanning) {
+			index = new TaskIndex(distances, allTasks);
+		} else {
+			// keep the numbering of the tasks to reuse the previous searches
+			if (memory == null || !memory.covers(allTasks)) {
+				memory = new SearchMemory(new TaskIndex(distances, allTasks), memoryBudget);
+			}
+			index = memory.index;
+		}
+
+		State init = new State(index, vehicle.getCurrentCity(), availableTasks, takenTasks);
+		if (memory != null) {
+			memory.forgetUnreachable(init);
+		}
+		return init;
 	}
 
 	/**
-	 * Create list of goal states
+	 * Compute a Logist Plan with A* procedure
 	 * 
 	 * @param vehicle
 	 * @param tasks
 	 * @return
 	 */
-	private ArrayList<State> setGoalStates(Vehicle vehicle, TaskSet tasks) {
-		ArrayList<State> goals = new ArrayList<State>();
-		ArrayList<Task> deliveryTasks = new ArrayList<Task>();
-
-		// not available tasks
-		deliveryTasks.addAll(tasks);
-		deliveryTasks.addAll(carriedTasks);
-
-		// possible end cities:
-		Set<City> deliveryCities = new HashSet<City>();
-		for (Task t : deliveryTasks) {
-			deliveryCities.add(t.deliveryCity);
+	private Plan aStarPlan(Vehicle vehicle, TaskSet tasks) {
+		City current = vehicle.getCurrentCity();
+		Plan plan = new Plan(current);
+
+		if (compareHeuristics) {
+			compareHeuristics(vehicle);
 		}
+		LinkedList<State> bestPath = astar(initialState, vehicle, heuristic, memory);
+		return computePlan(plan, current, bestPath);
+	}
+
+	/**
+	 * Compute a Logist Plan with the memory-bounded IDA*
+	 * 
+	 * @param vehicle
+	 * @param tasks
+	 * @return
+	 */
+	private Plan idaStarPlan(Vehicle vehicle, TaskSet tasks) {
+		City current = vehicle.getCurrentCity();
+		Plan plan = new Plan(current);
 
-		// goals
-		for (City city : deliveryCities) {
-			goals.add(new State(city, new ArrayList<Task>(), new ArrayList<Task>(), deliveryTasks));
+		IterativeDeepeningAstar search = new IterativeDeepeningAstar(vehicle, heuristic, memoryBudget);
+		LinkedList<State> bestPath = search.search(initialState);
+		expansions = (int) search.getExpansions();
+		System.out.println("Visited States nb in IDA* (" + heuristic + "): " + search.getExpansions() + " in "
+				+ search.getIterations() + " iterations, " + search.getTableSize() + " states in memory");
+		return computePlan(plan, current, bestPath);
+	}
+
+	/**
+	 * Compute a Logist Plan with the anytime A*, within the plan timeout. Falls
+	 * back to the greedy path from the initial state if no path was found in
+	 * time. If even the greedy path finds no goal, the plan is empty.
+	 * 
+	 * @param vehicle
+	 * @param tasks
+	 * @return
+	 */
+	private Plan anytimeAStarPlan(Vehicle vehicle, TaskSet tasks) {
+		City current = vehicle.getCurrentCity();
+		Plan plan = new Plan(current);
+
+		AnytimeAstar search = new AnytimeAstar(vehicle, heuristic, anytimeWeight);
+		LinkedList<State> bestPath = search.search(initialState, planDeadline);
+		expansions = search.getExpansions();
+		if (bestPath == null) {
+			System.err.println("Error: no plan found by the anytime A* in time, using the greedy plan");
+			bestPath = greedyPath(initialState, vehicle);
+			if (bestPath == null) {
+				// no task can be done, the vehicle stays where it is
+				return plan;
+			}
 		}
-		return goals;
+		System.out.println("Anytime A*: " + search.getExpansions() + " expansions, plan within " + search.getBound()
+				+ " times the optimal cost");
+		return computePlan(plan, current, bestPath);
 	}
 
 	/**
-	 * Compute a Logist Plan with A* procedure
+	 * Compute a Logist Plan with the hash-distributed parallel A*
 	 * 
 	 * @param vehicle
 	 * @param tasks
 	 * @return
 	 */
-	private Plan aStarPlan(Vehicle vehicle, TaskSet tasks) {
+	private Plan parallelAStarPlan(Vehicle vehicle, TaskSet tasks) {
 		City current = vehicle.getCurrentCity();
 		Plan plan = new Plan(current);
 
-		LinkedList<State> bestPath = astar(initialState, goalStates, vehicle);
+		ParallelAstar search = new ParallelAstar(vehicle, heuristic, threads);
+		long startTime = System.nanoTime();
+		LinkedList<State> bestPath = search.search(initialState);
+		long parallelTime = System.nanoTime() - startTime;
+		expansions = search.getExpansions();
+		System.out.println("Visited States nb in parallel A* (" + threads + " threads): " + search.getExpansions()
+				+ " in " + parallelTime / 1000000 + " ms");
+
+		if (reportSpeedup) {
+			startTime = System.nanoTime();
+			astar(initialState, vehicle, heuristic, null);
+			long sequentialTime = System.nanoTime() - startTime;
+			System.out.println("Sequential A*: " + sequentialTime / 1000000 + " ms, speed-up: "
+					+ String.format("%.2f", (double) sequentialTime / parallelTime));
+			// the sequential search overwrote the number of expansions
+			expansions = search.getExpansions();
+		}
 		return computePlan(plan, current, bestPath);
 	}
 
+	/**
+	 * Runs A* with every heuristic and prints how many states each one expands
+	 * 
+	 * @param vehicle
+	 */
+	private void compareHeuristics(Vehicle vehicle) {
+		System.out.println("Heuristic comparison (" + initialState.getTaskIndex().size() + " tasks):");
+		for (Heuristic h : Heuristic.values()) {
+			long startTime = System.nanoTime();
+			LinkedList<State> path = astar(initialState, vehicle, h, null);
+			long ms = (System.nanoTime() - startTime) / 1000000;
+			double distance = 0;
+			State previous = null;
+			for (State s : path) {
+				if (previous != null) {
+					distance += distanceBetween(previous, s);
+				}
+				previous = s;
+			}
+			System.out.println("  " + h + ": " + expansions + " expansions, distance " + distance + ", " + ms + " ms");
+		}
+	}
+
 	/**
 	 * Compute a Logist Plan with BFS
 	 * 
@@ -180,7 +326,7 @@ public class DeliberativeTemplate implements DeliberativeBehavior {
 		City current = vehicle.getCurrentCity();
 		Plan plan = new Plan(current);
 
-		LinkedList<State> bestPath = bfs(initialState, goalStates, vehicle);
+		LinkedList<State> bestPath = bfs(initialState, vehicle);
 		return computePlan(plan, current, bestPath);
 	}
 
@@ -197,13 +343,13 @@ public class DeliberativeTemplate implements DeliberativeBehavior {
 
 		for (Task task : tasks) {
 			// move: current city => pickup location
-			for (City city : current.pathTo(task.pickupCity))
+			for (City city : distances.pathTo(current.id, task.pickupCity.id))
 				plan.appendMove(city);
 
 			plan.appendPickup(task);
 
 			// move: pickup location => delivery location
-			for (City city : task.path())
+			for (City city : distances.pathTo(task.pickupCity.id, task.deliveryCity.id))
 				plan.appendMove(city);
 
 			plan.appendDelivery(task);
@@ -242,7 +388,7 @@ public class DeliberativeTemplate implements DeliberativeBehavior {
 		while (!path.isEmpty()) {
 			nextState = path.pollFirst();
 			// move to next city
-			for (City city : current.pathTo(nextState.getAgentPosition()))
+			for (City city : distances.pathTo(current.id, nextState.getAgentCity()))
 				plan.appendMove(city);
 
 			// deliver tasks
@@ -266,47 +412,77 @@ public class DeliberativeTemplate implements DeliberativeBehavior {
 		return plan;
 	}
 
+	/**
+	 * Follows the closest child until the goal. Unlike the naive plan, it
+	 * starts from a state, so it delivers the tasks already carried and never
+	 * exceeds the capacity. Every child delivers or picks up a task, so the
+	 * goal is reached after at most two steps per task, unless a state has no
+	 * child, e.g. when a task is heavier than the capacity.
+	 * 
+	 * @param init
+	 *            initial state
+	 * @param vehicle
+	 *            the vehicle following the path, for its capacity
+	 * @return the states of the path from init to a goal, null if a state
+	 *         before the goal has no child
+	 */
+	private LinkedList<State> greedyPath(State init, Vehicle vehicle) {
+		LinkedList<State> path = new LinkedList<State>();
+		State current = init;
+		path.add(current);
+		while (!current.isGoal()) {
+			State closest = null;
+			for (State child : current.computeChildren(vehicle)) {
+				if (closest == null || distanceBetween(current, child) < distanceBetween(current, closest)) {
+					closest = child;
+				}
+			}
+			if (closest == null) {
+				System.err.println("Error: no goal reached by the greedy path");
+				return null;
+			}
+			current = closest;
+			path.add(current);
+		}
+		return path;
+	}
+
 	/**
 	 * BFS procedure
 	 * 
 	 * @param init initial state
-	 * @param goals list of goal states
 	 * @param vehicle
 	 * @return
 	 */
-	private LinkedList<State> bfs(State init, ArrayList<State> goals, Vehicle vehicle) {
+	private LinkedList<State> bfs(State init, Vehicle vehicle) {
 		// initialize queue for bfs
 		LinkedList<Path> queue = new LinkedList<Path>();
-		queue.addLast(new Path(init, new LinkedList<State>(), vehicle, false));
+		queue.addLast(new Path(init, null));
 
 		Path currentPath;
 		State currentState;
-		LinkedList<State> previousPath;
-		ArrayList<State> visitedStates = new ArrayList<State>();
+		HashSet<State> visitedStates = new HashSet<State>();
 		List<State> children;
 		// bfs loop
 		while (!queue.isEmpty()) {
 			currentPath = queue.pollFirst();
 			currentState = currentPath.getState();
-			previousPath = currentPath.getPath();
 			sComparator.setState(currentState);
 
-			if (!visitedStates.contains(currentState)) {
-				// update the paths
-				visitedStates.add(currentState);
-
+			// add() returns false if the state was already visited
+			if (visitedStates.add(currentState)) {
 				// stop if a goal has been reached
-				if (goals.contains(currentState)) {
+				if (currentState.isGoal()) {
+					expansions = visitedStates.size();
 					System.out.println("Visited States nb in BFS: " + visitedStates.size() + ", out of: " + (visitedStates.size()+queue.size()));
-					previousPath.addLast(currentState);
-					return previousPath;
+					return currentPath.getStates();
 				} else {
 					// add successors in the queue sorted by their distance to
 					// the current state
-					children = new ArrayList<State>(currentState.computeChildren(vehicle));
+					children = currentState.computeChildren(vehicle);
 					Collections.sort(children, sComparator);
 					for (State s : children) {
-						queue.addLast(new Path(s, currentPath, vehicle, false));
+						queue.addLast(new Path(s, currentPath, null));
 					}
 				}
 			}
@@ -320,72 +496,68 @@ public class DeliberativeTemplate implements DeliberativeBehavior {
 	 * A* procedure
 	 * 
 	 * @param init initial state
-	 * @param goals list of goal states
 	 * @param vehicle
+	 * @param heuristic estimation of the distance left to travel
+	 * @param memory what the previous searches learned, updated at the end of
+	 *            the search, may be null
 	 * @return
 	 */
-	private LinkedList<State> astar(State init, ArrayList<State> goals, Vehicle vehicle) {
+	private LinkedList<State> astar(State init, Vehicle vehicle, Heuristic heuristic, SearchMemory memory) {
 		int costPerKm = vehicle.costPerKm();
+		HeuristicCache estimates = new HeuristicCache(heuristic, memory);
 
 		// initialize queue for A*
-		LinkedList<Path> queue = new LinkedList<Path>();
-		queue.addLast(new Path(init, new LinkedList<State>(), vehicle,  true));
+		pComparator.setVehicle(vehicle);
+		PathQueue queue = new PathQueue(pComparator);
+		queue.add(new Path(init, estimates));
 
 		Path currentPath;
 		State currentState;
-		LinkedList<State> previousPath;
 		HashMap<State, Double> visitedStates = new HashMap<State,Double>(); // state with its best travel cost
-		Set<State> children;
+		List<State> children;
 		double travelCost;
 		int nbSteps = 0;
-		// bfs loop
+		long startTime = System.nanoTime();
+		// A* loop
 		while (!queue.isEmpty()) {
-			currentPath = queue.pollFirst();
+			currentPath = queue.poll();
 			currentState = currentPath.getState();
-			previousPath = currentPath.getPath();
-			
-			// update travelling cost
-			if(!previousPath.isEmpty()) {
-				travelCost = distanceBetween(currentState, previousPath.peekLast()) * costPerKm;
-			} else {
-				travelCost = 0.0;
-			}
+			travelCost = currentPath.getTravelDistance() * costPerKm;
 
 			// Test if state is already visited or if the cost is lower
-			if (!visitedStates.containsKey(currentState) || travelCost < visitedStates.get(currentState)) {
+			Double knownCost = visitedStates.get(currentState);
+			if (knownCost == null || travelCost < knownCost) {
 				// update the paths
 				visitedStates.put(currentState, travelCost);
 				nbSteps++;
 
-				// stop if a goal has been reached
-				if (goals.contains(currentState)) {
-					System.out.println("Visited States nb in A*: " + nbSteps + ", out of: " + (nbSteps+queue.size()));
-					previousPath.addLast(currentState);
-					return previousPath;
+				// stop if a goal has been reached, or a state from which a
+				// previous search found an optimal path
+				boolean knownPath = memory != null && memory.knowsPathFrom(currentState);
+				if (currentState.isGoal() || knownPath) {
+					double seconds = (System.nanoTime() - startTime) / 1e9;
+					expansions = nbSteps;
+					System.out.println("Visited States nb in A* (" + heuristic + "): " + nbSteps + ", out of: "
+							+ (nbSteps + queue.size()) + " (" + (long) (nbSteps / seconds) + " expansions/s, "
+							+ estimates.getHits() + " cached estimations reused)");
+					LinkedList<State> states = currentPath.getStates();
+					if (memory != null) {
+						states.addAll(memory.pathFrom(currentState));
+						memory.learn(visitedStates, currentPath, costPerKm);
+						System.out.println("Search memory: " + memory.size() + " states"
+								+ (knownPath ? ", previous path reused" : ""));
+					}
+					return states;
 				} else {
-					// get successors
+					// add successors to the queue unless a cheaper path to
+					// them is already known
 					children = currentState.computeChildren(vehicle);
-					LinkedList<Path> tempQueue = new LinkedList<Path>();
 					for (State s : children) {
-						tempQueue.addLast(new Path(s, currentPath, vehicle, true));
-					}
-
-					// Sort successors given their cost function
-					pComparator.setVehicle(vehicle);
-					Collections.sort((List<Path>) tempQueue, pComparator);
-
-					// Merge the successors into the queue
-					int indexQueue = 0;
-					if (queue.size() > 0) {
-						for (int i = 0; i < tempQueue.size(); i++) {
-							while (indexQueue < queue.size() && tempQueue.get(i).getTotalReward() < queue
-									.get(indexQueue).getTotalReward()) {
-								indexQueue++;
-							}
-							queue.add(indexQueue, tempQueue.get(i));
+						Path childPath = new Path(s, currentPath, estimates);
+						Double knownChildCost = visitedStates.get(s);
+						if (knownChildCost == null || childPath.getTravelDistance() * costPerKm < knownChildCost) {
+							queue.add(childPath);
 						}
-					} else {
-						queue = tempQueue;
 					}
 				}
 			}
@@ -402,7 +574,7 @@ public class DeliberativeTemplate implements DeliberativeBehavior {
 	 * @return
 	 */
 	private double distanceBetween(State s1, State s2) {
-		return s1.getAgentPosition().distanceTo(s2.getAgentPosition());
+		return distances.between(s1.getAgentCity(), s2.getAgentCity());
 	}
 
 	/**
@@ -426,6 +598,6 @@ public class DeliberativeTemplate implements DeliberativeBehavior {
 	 * @return distance between 2 cities
 	 */
 	public double distanceBetween(List<City> cities, City cityA, City cityB) {
-		return cityA.distanceTo(cityB);
+		return distances.between(cityA.id, cityB.id);
 	}
 }
@@ -0,0 +1,98 @@
+package template;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import logist.topology.Topology.City;
+
+/**
+ * Shortest distances and routes between all the pairs of cities of a
+ * topology, computed once with the Floyd-Warshall algorithm so that the
+ * planner never walks the topology graph during a search. Both tables are
+ * indexed by city id.
+ * 
+ * @author Marc Schaer and Cynthia Oeschger
+ *
+ */
+class DistanceTable {
+
+	final List<City> cities;
+	private final int numCities;
+	// distances[from * numCities + to]
+	private final double[] distances;
+	// first city after from on a shortest route to to
+	private final int[] nextHop;
+
+	public DistanceTable(List<City> cities) {
+		this.cities = cities;
+		numCities = cities.size();
+		distances = new double[numCities * numCities];
+		nextHop = new int[numCities * numCities];
+
+		for (int i = 0; i < distances.length; i++) {
+			distances[i] = Double.POSITIVE_INFINITY;
+			nextHop[i] = -1;
+		}
+		for (City city : cities) {
+			distances[offset(city.id, city.id)] = 0;
+			nextHop[offset(city.id, city.id)] = city.id;
+			for (City neighbour : city.neighbors()) {
+				distances[offset(city.id, neighbour.id)] = city.distanceTo(neighbour);
+				nextHop[offset(city.id, neighbour.id)] = neighbour.id;
+			}
+		}
+
+		for (int k = 0; k < numCities; k++) {
+			for (int i = 0; i < numCities; i++) {
+				double ik = distances[offset(i, k)];
+				if (ik == Double.POSITIVE_INFINITY) {
+					continue;
+				}
+				for (int j = 0; j < numCities; j++) {
+					double throughK = ik + distances[offset(k, j)];
+					if (throughK < distances[offset(i, j)]) {
+						distances[offset(i, j)] = throughK;
+						nextHop[offset(i, j)] = nextHop[offset(i, k)];
+					}
+				}
+			}
+		}
+	}
+
+	private int offset(int from, int to) {
+		return from * numCities + to;
+	}
+
+	/**
+	 * Length of a shortest route between two cities
+	 * 
+	 * @param from
+	 *            id of the first city
+	 * @param to
+	 *            id of the second city
+	 * @return
+	 */
+	public double between(int from, int to) {
+		return distances[offset(from, to)];
+	}
+
+	/**
+	 * Cities of a shortest route between two cities, like City.pathTo(): the
+	 * starting city is excluded and the destination is included
+	 * 
+	 * @param from
+	 *            id of the starting city
+	 * @param to
+	 *            id of the destination
+	 * @return
+	 */
+	public List<City> pathTo(int from, int to) {
+		List<City> path = new ArrayList<City>();
+		int current = from;
+		while (current != to) {
+			current = nextHop[offset(current, to)];
+			path.add(cities.get(current));
+		}
+		return path;
+	}
+}
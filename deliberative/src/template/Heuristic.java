@@ -0,0 +1,113 @@
+package template;
+
+import java.util.Arrays;
+
+/**
+ * Admissible estimations of the distance that remains to be traveled from a
+ * state before all the tasks are delivered. None of them overestimates it, so
+ * A* still returns an optimal plan whichever is selected.
+ * 
+ * @author Marc Schaer and Cynthia Oeschger
+ *
+ */
+enum Heuristic {
+
+	/**
+	 * No estimation: A* behaves like a uniform cost search
+	 */
+	NONE {
+		@Override
+		double estimate(State s) {
+			return 0;
+		}
+	},
+
+	/**
+	 * Longest of the remaining tasks: going to the pickup city then to the
+	 * delivery city of a free task, or to the delivery city of a taken task
+	 */
+	MAX_TASK {
+		@Override
+		double estimate(State s) {
+			TaskIndex index = s.getTaskIndex();
+			int position = s.getAgentCity();
+			double max = 0;
+			for (int t = 0; t < index.size(); t++) {
+				double dist;
+				if (s.isFree(t)) {
+					dist = index.distances.between(position, index.pickupCity[t]) + index.taskDistance[t];
+				} else if (s.isTaken(t)) {
+					dist = index.distances.between(position, index.deliveryCity[t]);
+				} else {
+					continue;
+				}
+				max = Math.max(max, dist);
+			}
+			return max;
+		}
+	},
+
+	/**
+	 * Weight of a minimum spanning tree over the agent's city and all the
+	 * cities that still have to be visited. Any route visiting them is a
+	 * spanning path, hence at least as long as the tree. The MAX_TASK bound is
+	 * used instead when it is higher.
+	 */
+	MST {
+		@Override
+		double estimate(State s) {
+			TaskIndex index = s.getTaskIndex();
+			int numCities = index.cities.size();
+
+			// cities to visit, without duplicates
+			boolean[] toVisit = new boolean[numCities];
+			toVisit[s.getAgentCity()] = true;
+			for (int t = 0; t < index.size(); t++) {
+				if (s.isFree(t)) {
+					toVisit[index.pickupCity[t]] = true;
+					toVisit[index.deliveryCity[t]] = true;
+				} else if (s.isTaken(t)) {
+					toVisit[index.deliveryCity[t]] = true;
+				}
+			}
+			int n = 0;
+			int[] nodes = new int[numCities];
+			for (int c = 0; c < toVisit.length; c++) {
+				if (toVisit[c]) {
+					nodes[n++] = c;
+				}
+			}
+
+			// Prim's algorithm on the complete graph of shortest distances
+			double[] link = new double[n];
+			boolean[] inTree = new boolean[n];
+			Arrays.fill(link, Double.MAX_VALUE);
+			link[0] = 0;
+			double weight = 0;
+			for (int k = 0; k < n; k++) {
+				int next = -1;
+				for (int i = 0; i < n; i++) {
+					if (!inTree[i] && (next < 0 || link[i] < link[next])) {
+						next = i;
+					}
+				}
+				inTree[next] = true;
+				weight += link[next];
+				for (int i = 0; i < n; i++) {
+					if (!inTree[i]) {
+						link[i] = Math.min(link[i], index.distances.between(nodes[next], nodes[i]));
+					}
+				}
+			}
+			return Math.max(weight, MAX_TASK.estimate(s));
+		}
+	};
+
+	/**
+	 * Lower bound of the distance left to travel
+	 * 
+	 * @param s
+	 * @return
+	 */
+	abstract double estimate(State s);
+}
@@ -0,0 +1,60 @@
+package template;
+
+import java.util.HashMap;
+
+/**
+ * Remembers the estimation of every state met during a search, since A*
+ * reaches the same state through many paths.
+ * 
+ * @author Marc Schaer and Cynthia Oeschger
+ *
+ */
+class HeuristicCache {
+
+	private final Heuristic heuristic;
+	// distances learned by the previous searches, may be null
+	private final SearchMemory memory;
+	private final HashMap<State, Double> estimates = new HashMap<State, Double>();
+	private int hits = 0;
+
+	public HeuristicCache(Heuristic heuristic) {
+		this(heuristic, null);
+	}
+
+	public HeuristicCache(Heuristic heuristic, SearchMemory memory) {
+		this.heuristic = heuristic;
+		this.memory = memory;
+	}
+
+	/**
+	 * Estimated distance left to travel from a state
+	 * 
+	 * @param s
+	 * @return
+	 */
+	public double estimate(State s) {
+		Double estimate = estimates.get(s);
+		if (estimate == null) {
+			estimate = heuristic.estimate(s);
+			if (memory != null) {
+				estimate = Math.max(estimate, memory.estimate(s));
+			}
+			estimates.put(s, estimate);
+		} else {
+			hits++;
+		}
+		return estimate;
+	}
+
+	public Heuristic getHeuristic() {
+		return heuristic;
+	}
+
+	public int size() {
+		return estimates.size();
+	}
+
+	public int getHits() {
+		return hits;
+	}
+}
@@ -0,0 +1,202 @@
+package template;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import logist.simulation.Vehicle;
+
+/**
+ * Memory-bounded alternative to A*: iterative deepening A* (IDA*) with
+ * controlled re-expansion. Each iteration is a depth-first search that prunes
+ * the paths whose cost function exceeds a threshold, so only the current path
+ * is kept in memory, plus a transposition table of at most memoryBudget states
+ * that avoids exploring the same state twice in an iteration.
+ * 
+ * The distances being real numbers, raising the threshold to the next pruned
+ * cost function would explore only a few more states per iteration. The
+ * threshold is instead raised so as to about double the number of explored
+ * states, using a histogram of the pruned cost functions. The goal found may
+ * then cost more than the optimum: the iteration goes on as a branch and
+ * bound, pruning the paths that cannot beat the best goal, and the search
+ * ends once the best goal is within the threshold.
+ * 
+ * @author Marc Schaer and Cynthia Oeschger
+ *
+ */
+class IterativeDeepeningAstar {
+
+	// Number of buckets of the histogram of the pruned cost functions
+	private static final int BUCKETS = 100;
+
+	private final Vehicle vehicle;
+	private final Heuristic heuristic;
+	private final int memoryBudget;
+	// best travel distance to the states explored during this iteration
+	private final HashMap<State, Double> transpositions = new HashMap<State, Double>();
+	// states of the current path
+	private final ArrayList<State> stack = new ArrayList<State>();
+
+	private LinkedList<State> incumbent;
+	private double incumbentDistance;
+	private double threshold;
+	// pruned cost functions, bucket i holds those in ]threshold + i * width,
+	// threshold + (i + 1) * width], the last one all the higher ones
+	private long[] buckets;
+	private double bucketWidth;
+	private double minPruned;
+	private double maxPruned;
+	private long iterationExpansions;
+	private long expansions;
+	private int iterations;
+
+	public IterativeDeepeningAstar(Vehicle vehicle, Heuristic heuristic, int memoryBudget) {
+		this.vehicle = vehicle;
+		this.heuristic = heuristic;
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Runs the search from an initial state
+	 * 
+	 * @param init
+	 * @return the states of an optimal path, null if no goal is reachable
+	 */
+	public LinkedList<State> search(State init) {
+		incumbent = null;
+		incumbentDistance = Double.MAX_VALUE;
+		threshold = heuristic.estimate(init);
+		expansions = 0;
+		iterations = 0;
+
+		while (true) {
+			transpositions.clear();
+			buckets = new long[BUCKETS];
+			bucketWidth = Math.max(threshold, 1) / BUCKETS;
+			minPruned = Double.MAX_VALUE;
+			maxPruned = 0;
+			iterationExpansions = 0;
+			iterations++;
+
+			stack.clear();
+			stack.add(init);
+			dfs(init, 0);
+			expansions += iterationExpansions;
+
+			// every path cheaper than the incumbent has been explored
+			if ((incumbent != null && incumbentDistance <= threshold) || minPruned == Double.MAX_VALUE) {
+				break;
+			}
+			threshold = Math.min(nextThreshold(), incumbentDistance);
+		}
+		return incumbent;
+	}
+
+	/**
+	 * Explores the states below a state whose cost function is within the
+	 * threshold
+	 * 
+	 * @param state
+	 *            last state of the stack
+	 * @param distance
+	 *            travel distance to the state
+	 */
+	private void dfs(State state, double distance) {
+		iterationExpansions++;
+		if (state.isGoal()) {
+			if (distance < incumbentDistance) {
+				incumbentDistance = distance;
+				incumbent = new LinkedList<State>(stack);
+			}
+			return;
+		}
+
+		List<State> children = state.computeChildren(vehicle);
+		DistanceTable distances = state.getTaskIndex().distances;
+		int n = 0;
+		State[] kept = new State[children.size()];
+		double[] keptDistance = new double[children.size()];
+		double[] keptCost = new double[children.size()];
+		for (State child : children) {
+			double childDistance = distance + distances.between(state.getAgentCity(), child.getAgentCity());
+			double cost = childDistance + heuristic.estimate(child);
+			if (cost >= incumbentDistance) {
+				continue;
+			}
+			if (cost > threshold) {
+				prune(cost);
+				continue;
+			}
+			Double knownDistance = transpositions.get(child);
+			if (knownDistance != null && knownDistance <= childDistance) {
+				continue;
+			}
+			if (knownDistance != null || transpositions.size() < memoryBudget) {
+				transpositions.put(child, childDistance);
+			}
+
+			// insertion by increasing cost function
+			int i = n++;
+			while (i > 0 && keptCost[i - 1] > cost) {
+				kept[i] = kept[i - 1];
+				keptDistance[i] = keptDistance[i - 1];
+				keptCost[i] = keptCost[i - 1];
+				i--;
+			}
+			kept[i] = child;
+			keptDistance[i] = childDistance;
+			keptCost[i] = cost;
+		}
+
+		for (int i = 0; i < n; i++) {
+			// a goal found meanwhile may prune the remaining children
+			if (keptCost[i] >= incumbentDistance) {
+				break;
+			}
+			stack.add(kept[i]);
+			dfs(kept[i], keptDistance[i]);
+			stack.remove(stack.size() - 1);
+		}
+	}
+
+	private void prune(double cost) {
+		int bucket = (int) Math.min(BUCKETS - 1, (cost - threshold) / bucketWidth);
+		buckets[bucket]++;
+		minPruned = Math.min(minPruned, cost);
+		maxPruned = Math.max(maxPruned, cost);
+	}
+
+	/**
+	 * Threshold including about as many pruned states as were explored in the
+	 * last iteration
+	 * 
+	 * @return
+	 */
+	private double nextThreshold() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS - 1; i++) {
+			count += buckets[i];
+			if (count >= iterationExpansions) {
+				return Math.max(minPruned, threshold + (i + 1) * bucketWidth);
+			}
+		}
+		return maxPruned;
+	}
+
+	public long getExpansions() {
+		return expansions;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return the number of states kept in the transposition table at the end
+	 *         of the last iteration
+	 */
+	public int getTableSize() {
+		return transpositions.size();
+	}
+}
@@ -0,0 +1,213 @@
+package template;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import logist.simulation.Vehicle;
+
+/**
+ * Hash-distributed A* (HDA*). Every state is owned by the worker given by its
+ * hash: only this worker keeps it in its open list and closed map, so the
+ * workers share no search structure. Successors are sent to the inbox of
+ * their owner, a lock-free queue.
+ * 
+ * A goal found by a worker is not necessarily optimal since the others may
+ * still have cheaper paths in their open lists. It becomes the incumbent
+ * solution, and the search goes on, pruning paths whose cost function is not
+ * lower, until no path is left in any open list or inbox.
+ * 
+ * @author Marc Schaer and Cynthia Oeschger
+ *
+ */
+class ParallelAstar {
+
+	/**
+	 * A successor sent to the worker owning its state
+	 */
+	private static class Successor {
+		final State state;
+		// null for the initial state
+		final Path parent;
+
+		Successor(State state, Path parent) {
+			this.state = state;
+			this.parent = parent;
+		}
+	}
+
+	private final Vehicle vehicle;
+	private final int costPerKm;
+	private final Heuristic heuristic;
+	private final Worker[] workers;
+	// Number of paths in the inboxes and open lists of all the workers
+	private final AtomicLong pending = new AtomicLong();
+	// Set when a worker fails, so that the others stop instead of waiting for
+	// the paths it will never count down
+	private volatile boolean aborted = false;
+	private Path incumbent = null;
+	// Cost of the incumbent, read by the workers without locking
+	private volatile double incumbentCost = Double.MAX_VALUE;
+
+	public ParallelAstar(Vehicle vehicle, Heuristic heuristic, int threads) {
+		this.vehicle = vehicle;
+		this.costPerKm = vehicle.costPerKm();
+		this.heuristic = heuristic;
+		workers = new Worker[threads];
+	}
+
+	/**
+	 * Runs the search from an initial state
+	 * 
+	 * @param init
+	 * @return the sequence of states of an optimal path, null if no goal is
+	 *         reachable
+	 */
+	public LinkedList<State> search(State init) {
+		PathComparator comparator = new PathComparator();
+		comparator.setVehicle(vehicle);
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(comparator);
+		}
+		incumbent = null;
+		incumbentCost = Double.MAX_VALUE;
+		aborted = false;
+		send(new Successor(init, null));
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers.length);
+		try {
+			List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(workers.length);
+			for (Worker w : workers) {
+				tasks.add(w);
+			}
+			for (Future<Integer> f : executor.invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		} finally {
+			executor.shutdown();
+		}
+
+		Path best = getIncumbent();
+		return best == null ? null : best.getStates();
+	}
+
+	/**
+	 * @return the number of states expanded by all the workers
+	 */
+	public int getExpansions() {
+		int expansions = 0;
+		for (Worker w : workers) {
+			expansions += w.expansions;
+		}
+		return expansions;
+	}
+
+	private void send(Successor successor) {
+		int h = successor.state.hashCode();
+		h ^= h >>> 16;
+		pending.incrementAndGet();
+		workers[(h & 0x7fffffff) % workers.length].inbox.add(successor);
+	}
+
+	private synchronized Path getIncumbent() {
+		return incumbent;
+	}
+
+	private synchronized void offerGoal(Path goal) {
+		if (incumbent == null || goal.getTravelDistance() < incumbent.getTravelDistance()) {
+			incumbent = goal;
+			incumbentCost = goal.getTravelDistance() * costPerKm;
+		}
+	}
+
+	private class Worker implements Callable<Integer> {
+
+		final ConcurrentLinkedQueue<Successor> inbox = new ConcurrentLinkedQueue<Successor>();
+		final PathQueue open;
+		final HashMap<State, Double> closed = new HashMap<State, Double>();
+		final HeuristicCache estimates = new HeuristicCache(heuristic);
+		int expansions = 0;
+
+		Worker(PathComparator comparator) {
+			open = new PathQueue(comparator);
+		}
+
+		@Override
+		public Integer call() {
+			try {
+				while (pending.get() > 0 && !aborted) {
+					Successor successor;
+					while (!aborted && (successor = inbox.poll()) != null) {
+						receive(successor);
+					}
+					if (open.isEmpty()) {
+						Thread.yield();
+					} else {
+						expand(open.poll());
+						// children are counted before their parent is discarded
+						pending.decrementAndGet();
+					}
+				}
+			} catch (RuntimeException e) {
+				aborted = true;
+				throw e;
+			} catch (Error e) {
+				aborted = true;
+				throw e;
+			}
+			return expansions;
+		}
+
+		private void receive(Successor successor) {
+			Path path = successor.parent == null ? new Path(successor.state, estimates)
+					: new Path(successor.state, successor.parent, estimates);
+			Double knownCost = closed.get(path.getState());
+			int queued = open.size();
+			if (knownCost == null || path.getTravelDistance() * costPerKm < knownCost) {
+				open.add(path);
+			}
+			// the path was dropped or replaced a queued one
+			if (open.size() == queued) {
+				pending.decrementAndGet();
+			}
+		}
+
+		private void expand(Path path) {
+			State state = path.getState();
+			double travelCost = path.getTravelDistance() * costPerKm;
+			Double knownCost = closed.get(state);
+			if ((knownCost != null && travelCost >= knownCost) || path.totalReward(costPerKm) >= incumbentCost) {
+				return;
+			}
+			closed.put(state, travelCost);
+			expansions++;
+
+			if (state.isGoal()) {
+				offerGoal(path);
+			} else {
+				for (State child : state.computeChildren(vehicle)) {
+					send(new Successor(child, path));
+				}
+			}
+		}
+	}
+}
@@ -2,12 +2,10 @@ package template;
 
 import java.util.LinkedList;
 
-import logist.simulation.Vehicle;
-import logist.task.Task;
-import logist.topology.Topology.City;
-
 /**
- * Class that holds a state and the path traveled before arriving at it
+ * Class that holds a state and a pointer to the path traveled before arriving
+ * at it. The sequence of states is only rebuilt once, with getStates(), when a
+ * goal is reached.
  * 
  * @author Marc Schaer and Cynthia Oeschger
  * 
@@ -15,98 +13,34 @@ import logist.topology.Topology.City;
 public class Path {
 
 	private final State lastState;
-	private final LinkedList<State> statesList;
+	// null for the initial state
+	private final Path parent;
 	private double traveledDistance = 0;
-	private double deliveredReward = 0;
-	private double undeliveredReward = 0;
 	private double expectedFutureDistance = 0;
-	private double totalReward = 0;
-
-	public Path(State state, LinkedList<State> statesList, Vehicle vehicle, boolean runningAstar) {
-		lastState = state;
-		this.statesList = statesList;
-		if (runningAstar) {
-			traveledDistance = travelDistance();
-			initCosts();
-			totalReward = totalReward(vehicle.costPerKm());
-		}
-	}
-
-	@SuppressWarnings("unchecked")
-	public Path(State state, Path path, Vehicle vehicle, boolean runningAstar) {
-		lastState = state;
-		statesList = (LinkedList<State>) path.getPath().clone();
-		statesList.addLast(path.getState());
-		if (runningAstar) {
-			traveledDistance = path.getTravelDistance()
-					+ distanceBetween(lastState, statesList.peekLast());
-			initCosts();
-			totalReward = totalReward(vehicle.costPerKm());
-			
-		}
-	}
 
 	/**
-	 * Initialization of the path costs
-	 */
-	private void initCosts() {
-		deliveredReward = lastState.getDeliveredReward();
-		undeliveredReward = lastState.getUndeliveredReward();
-		expectedFutureDistance = estimateFutureDistance();
-	}
-
-	/**
-	 * Computes the distance traveled in the whole path
+	 * Path made of an initial state
 	 * 
-	 * @return distance
+	 * @param state
+	 * @param heuristic
+	 *            estimation of the future distance, null if the costs are not
+	 *            needed (BFS)
 	 */
-	private double travelDistance() {
-		double dist = 0.0;
-		LinkedList<City> cityPath = new LinkedList<City>();
-
-		for (State s : statesList) {
-			cityPath.addLast(s.getAgentPosition());
-		}
-		cityPath.addLast(lastState.getAgentPosition());
-
-		City start = cityPath.pollFirst();
-		City next;
-		while (!cityPath.isEmpty()) {
-			next = cityPath.pollFirst();
-			dist += start.distanceTo(next);
-			start = next;
+	public Path(State state, HeuristicCache heuristic) {
+		lastState = state;
+		parent = null;
+		if (heuristic != null) {
+			expectedFutureDistance = heuristic.estimate(lastState);
 		}
-		return dist;
 	}
 
-	/**
-	 * Estimates the distance that will be traveled. Takes into account the
-	 * distances each free task's pickup and delivery city and the distance
-	 * between the vehicle and its closest pickup city
-	 * 
-	 * @return
-	 */
-	private double estimateFutureDistance() {
-		double estimate = 0;
-		City lastCity = lastState.getAgentPosition();
-
-		// estimation to pick and deliver remaining tasks
-		Task closestTask = null;
-		double min = Double.MAX_VALUE;
-		double dist;
-		for (Task t : lastState.getFreeTasks()) {
-			dist = t.pickupCity.distanceTo(t.deliveryCity);
-			estimate += dist;
-			if (dist < min) {
-				closestTask = t;
-			}
-		}
-		// estimation to go and pick the first remaining task
-		if (min < Double.MAX_VALUE) {
-			estimate += lastCity.distanceTo(closestTask.pickupCity);
+	public Path(State state, Path path, HeuristicCache heuristic) {
+		lastState = state;
+		parent = path;
+		if (heuristic != null) {
+			traveledDistance = path.getTravelDistance() + distanceBetween(lastState, path.getState());
+			expectedFutureDistance = heuristic.estimate(lastState);
 		}
-
-		return estimate;
 	}
 
 	/**
@@ -117,14 +51,14 @@ public class Path {
 	 * @return
 	 */
 	private double distanceBetween(State s1, State s2) {
-		return s1.getAgentPosition().distanceTo(s2.getAgentPosition());
+		return s1.getTaskIndex().distances.between(s1.getAgentCity(), s2.getAgentCity());
 	}
 
 	/**
 	 * Compute f(n) = g(n) + h(n) where g(n) is the cost from previous actions
 	 * and h(n) is an estimation of the future cost
 	 * 
-	 * @param vehicle
+	 * @param costPerKm
 	 * @return
 	 */
 	public double totalReward(int costPerKm) {
@@ -134,34 +68,33 @@ public class Path {
 		return g + h;
 	}
 
-	@Override
-	public int hashCode() {
-		return lastState.hashCode() ^ statesList.hashCode();
-	}
-
-	@Override
-	public boolean equals(Object o) {
-		if (!(o instanceof Path))
-			return false;
-		Path pairo = (Path) o;
-		return this.lastState.equals(pairo.getState())
-				&& this.statesList.equals(pairo.getPath());
-	}
-
 	public State getState() {
 		return lastState;
 	}
 
-	public LinkedList<State> getPath() {
-		return statesList;
+	public Path getParent() {
+		return parent;
+	}
+
+	/**
+	 * Rebuilds the sequence of states from the initial state to the last one
+	 * 
+	 * @return the states of the path
+	 */
+	public LinkedList<State> getStates() {
+		LinkedList<State> states = new LinkedList<State>();
+		for (Path p = this; p != null; p = p.parent) {
+			states.addFirst(p.lastState);
+		}
+		return states;
 	}
 
 	public double getTravelDistance() {
 		return traveledDistance;
 	}
 
-	public double getTotalReward() {
-		return totalReward;
+	public double getExpectedFutureDistance() {
+		return expectedFutureDistance;
 	}
 
 }
\ No newline at end of file
@@ -21,10 +21,7 @@ class PathComparator implements Comparator<Path> {
 
 	@Override
 	public int compare(Path o1, Path o2) {
-		Double c1 = o1.totalReward(costPerKm);
-		Double c2 = o2.totalReward(costPerKm);
-
-		return (c1.compareTo(c2));
+		return Double.compare(o1.totalReward(costPerKm), o2.totalReward(costPerKm));
 	}
 
 	public void setVehicle(Vehicle v) {
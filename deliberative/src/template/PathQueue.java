@@ -0,0 +1,106 @@
+package template;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Binary heap of paths used as the open list of A*. Each state appears at most
+ * once in the queue: adding a cheaper path to a state already queued replaces
+ * the old one (decrease-key), so both operations cost O(log n).
+ * 
+ * @author Marc Schaer and Cynthia Oeschger
+ *
+ */
+class PathQueue {
+
+	private final Comparator<Path> comparator;
+	private final ArrayList<Path> heap = new ArrayList<Path>();
+	// Position in the heap of the path of each queued state
+	private final HashMap<State, Integer> positions = new HashMap<State, Integer>();
+
+	public PathQueue(Comparator<Path> comparator) {
+		this.comparator = comparator;
+	}
+
+	public boolean isEmpty() {
+		return heap.isEmpty();
+	}
+
+	public int size() {
+		return heap.size();
+	}
+
+	/**
+	 * Adds a path to the queue. If a path to the same state is already queued,
+	 * keeps the one with the lowest cost function.
+	 * 
+	 * @param path
+	 * @return true if the path was added
+	 */
+	public boolean add(Path path) {
+		Integer position = positions.get(path.getState());
+		if (position == null) {
+			heap.add(path);
+			siftUp(heap.size() - 1);
+			return true;
+		}
+		if (comparator.compare(path, heap.get(position)) < 0) {
+			heap.set(position, path);
+			siftUp(position);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes and returns the path with the lowest cost function
+	 * 
+	 * @return the path with the lowest cost function
+	 */
+	public Path poll() {
+		Path first = heap.get(0);
+		positions.remove(first.getState());
+		Path last = heap.remove(heap.size() - 1);
+		if (!heap.isEmpty()) {
+			heap.set(0, last);
+			siftDown(0);
+		}
+		return first;
+	}
+
+	private void siftUp(int index) {
+		Path path = heap.get(index);
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (comparator.compare(heap.get(parent), path) <= 0) {
+				break;
+			}
+			move(heap.get(parent), index);
+			index = parent;
+		}
+		move(path, index);
+	}
+
+	private void siftDown(int index) {
+		Path path = heap.get(index);
+		int size = heap.size();
+		while (2 * index + 1 < size) {
+			int child = 2 * index + 1;
+			if (child + 1 < size && comparator.compare(heap.get(child + 1), heap.get(child)) < 0) {
+				child++;
+			}
+			if (comparator.compare(heap.get(child), path) >= 0) {
+				break;
+			}
+			move(heap.get(child), index);
+			index = child;
+		}
+		move(path, index);
+	}
+
+	private void move(Path path, int index) {
+		heap.set(index, path);
+		positions.put(path.getState(), index);
+	}
+}
@@ -0,0 +1,162 @@
+package template;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import logist.task.Task;
+
+/**
+ * What the A* searches of an agent learned about the distance left to travel
+ * from each state, kept to speed up the replanning after a plan is cancelled
+ * (Adaptive A* with reuse of the previous paths).
+ * 
+ * The distance left from a state does not depend on the problem it belongs to:
+ * a task picked up by another agent looks the same as a delivered one. Hence,
+ * as long as the tasks keep the same numbering, after a search that found an
+ * optimal path of distance C:
+ * 
+ * - every expanded state s is at least C - g(s) from the goal, which is a
+ * better heuristic than the initial one for the next searches;
+ * 
+ * - the states of the optimal path are exactly C - g(s) from the goal, and the
+ * rest of the path is known. A search reaching one of them with the lowest
+ * cost function can stop there.
+ * 
+ * Only the states reachable from the current problem are kept, and at most
+ * budget states are learned besides the ones of the optimal paths.
+ * 
+ * @author Marc Schaer and Cynthia Oeschger
+ *
+ */
+class SearchMemory {
+
+	final TaskIndex index;
+	private final int budget;
+	// lower bounds of the distance left to travel from the expanded states
+	private final HashMap<State, Double> learned = new HashMap<State, Double>();
+	// next state of an optimal path, the learned distance of these states is
+	// exact
+	private final HashMap<State, State> nextOnPath = new HashMap<State, State>();
+
+	public SearchMemory(TaskIndex index, int budget) {
+		this.index = index;
+		this.budget = budget;
+	}
+
+	/**
+	 * Tells if the states of a problem can be numbered like the remembered ones
+	 * 
+	 * @param tasks
+	 *            all the tasks of the problem, free or taken
+	 * @return true if all the tasks are in the index
+	 */
+	public boolean covers(List<Task> tasks) {
+		for (Task t : tasks) {
+			boolean found = false;
+			for (Task known : index.tasks) {
+				found |= known.equals(t);
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Forgets the states that cannot be reached from the initial state of a
+	 * new problem, e.g. the ones where a delivered task or a task taken by
+	 * another agent is still to be done
+	 * 
+	 * @param init
+	 */
+	public void forgetUnreachable(State init) {
+		for (Iterator<State> it = learned.keySet().iterator(); it.hasNext();) {
+			if (!it.next().isReachableFrom(init)) {
+				it.remove();
+			}
+		}
+		for (Iterator<State> it = nextOnPath.keySet().iterator(); it.hasNext();) {
+			if (!it.next().isReachableFrom(init)) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Learned lower bound of the distance left to travel from a state
+	 * 
+	 * @param s
+	 * @return 0 if nothing was learned about the state
+	 */
+	public double estimate(State s) {
+		Double estimate = learned.get(s);
+		return estimate == null ? 0 : estimate;
+	}
+
+	/**
+	 * Tells if an optimal path from a state to the goal is known
+	 * 
+	 * @param s
+	 * @return
+	 */
+	public boolean knowsPathFrom(State s) {
+		return nextOnPath.containsKey(s);
+	}
+
+	/**
+	 * States of the known optimal path after a state, up to the goal
+	 * 
+	 * @param s
+	 * @return an empty list if s is a goal
+	 */
+	public LinkedList<State> pathFrom(State s) {
+		LinkedList<State> states = new LinkedList<State>();
+		State next = nextOnPath.get(s);
+		while (next != null) {
+			states.addLast(next);
+			next = nextOnPath.get(next);
+		}
+		return states;
+	}
+
+	/**
+	 * Learns from a search that ended on an optimal path
+	 * 
+	 * @param visitedStates
+	 *            expanded states with their travel cost
+	 * @param last
+	 *            the path popped last, to a goal or a state whose path to the
+	 *            goal is known
+	 * @param costPerKm
+	 *            to convert the travel costs into distances
+	 */
+	public void learn(Map<State, Double> visitedStates, Path last, int costPerKm) {
+		double solution = last.getTravelDistance() + (last.getState().isGoal() ? 0 : estimate(last.getState()));
+		for (Map.Entry<State, Double> e : visitedStates.entrySet()) {
+			if (learned.size() < budget || learned.containsKey(e.getKey())) {
+				learn(e.getKey(), solution - e.getValue() / costPerKm);
+			}
+		}
+		// the distances of the path states must be exact, whatever the budget
+		for (Path p = last; p != null; p = p.getParent()) {
+			learn(p.getState(), solution - p.getTravelDistance());
+			if (p.getParent() != null) {
+				nextOnPath.put(p.getParent().getState(), p.getState());
+			}
+		}
+	}
+
+	private void learn(State s, double distanceLeft) {
+		if (distanceLeft > estimate(s)) {
+			learned.put(s, distanceLeft);
+		}
+	}
+
+	public int size() {
+		return learned.size();
+	}
+}
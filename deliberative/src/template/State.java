@@ -1,10 +1,8 @@
 package template;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
 
 import logist.simulation.Vehicle;
 import logist.task.Task;
@@ -14,88 +12,92 @@ import logist.topology.Topology.City;
  * A state is composed by the position of an agent and the state of the world
  * (all freeTasks with their respective positions)
  * 
+ * The tasks are numbered by a TaskIndex and their status is packed in two bit
+ * masks: a task is free if its bit is set in free, taken if its bit is set in
+ * taken and delivered otherwise. The agent position is the id of its city.
+ * 
  * @author Marc Schaer and Cynthia Oeschger
  *
  */
 public class State {
 
-	private static final TaskComparator tComparator = new TaskComparator();;
+	private final TaskIndex index;
+	private final int agentPosition;
+	private final long[] free;
+	private final long[] taken;
+	// Total weight of the taken tasks
+	private final int load;
+	private final int hash;
 
-	private City agentPosition;
-	// Tasks are represented in ordered sets
-	private TreeSet<Task> freeTasks = new TreeSet<Task>(tComparator);
-	private TreeSet<Task> takenTasks = new TreeSet<Task>(tComparator);
-	private TreeSet<Task> deliveredTasks = new TreeSet<Task>(tComparator);
-	private double rewardDelivered = 0;
-	private double rewardUndelivered = 0;
+	public State(TaskIndex index, City agentPosition, List<Task> freeTasks, List<Task> takenTasks) {
+		this(index, agentPosition.id, index.mask(freeTasks), index.mask(takenTasks), weightOf(takenTasks));
+	}
 
-	public State(City agentPosition, ArrayList<Task> freeTasks, ArrayList<Task> takenTasks,
-			ArrayList<Task> deliveredTasks) {
-		super();
+	private State(TaskIndex index, int agentPosition, long[] free, long[] taken, int load) {
+		this.index = index;
 		this.agentPosition = agentPosition;
-		this.freeTasks.addAll(freeTasks);
-		this.takenTasks.addAll(takenTasks);
-		this.deliveredTasks.addAll(deliveredTasks);
-		this.rewardDelivered = deliveredTasksReward();
-		this.rewardUndelivered = undeliveredTasksReward();
+		this.free = free;
+		this.taken = taken;
+		this.load = load;
+		this.hash = 31 * (31 * agentPosition + Arrays.hashCode(free)) + Arrays.hashCode(taken);
 	}
 
-
 	/**
-	 * Computes the reward received for the delivered tasks
+	 * Compute the total weight of a list of tasks
 	 * 
+	 * @param tasks
 	 * @return
 	 */
-	private double deliveredTasksReward() {
-		double totalReward = 0;
-		for (Task t : deliveredTasks) {
-			totalReward += t.reward;
+	private static int weightOf(List<Task> tasks) {
+		int totalWeight = 0;
+		for (Task t : tasks) {
+			totalWeight += t.weight;
 		}
-		return totalReward;
+		return totalWeight;
 	}
 
 	/**
-	 * Computes the reward that can be received for all not delivered tasks
+	 * Tells if the state is a goal, i.e. all the tasks are delivered
 	 * 
-	 * @return
+	 * @return true if there is no free and no taken task
 	 */
-	private double undeliveredTasksReward() {
-		double totalReward = 0;
-		for (Task t : takenTasks) {
-			totalReward += t.reward;
-		}
-		for (Task t : freeTasks) {
-			totalReward += t.reward;
+	public boolean isGoal() {
+		for (int w = 0; w < free.length; w++) {
+			if (free[w] != 0 || taken[w] != 0) {
+				return false;
+			}
 		}
-		return totalReward;
+		return true;
 	}
 
 	/**
-	 * Compute the total weight of a list of freeTasks
+	 * Tells if this state may be reached from another one: its free tasks
+	 * must be free there, and its free or taken tasks must be free or taken
+	 * there
 	 * 
-	 * @param tempTasks
+	 * @param s
 	 * @return
 	 */
-	private int computeWeightOfAListOfTasks(TreeSet<Task> tempTasks) {
-		int totalWeight = 0;
-		for (Task t : tempTasks) {
-			totalWeight += t.weight;
+	public boolean isReachableFrom(State s) {
+		for (int w = 0; w < free.length; w++) {
+			if ((free[w] & ~s.free[w]) != 0 || ((free[w] | taken[w]) & ~(s.free[w] | s.taken[w])) != 0) {
+				return false;
+			}
 		}
-		return totalWeight;
+		return true;
 	}
-	
+
 	/**
 	 * Returns the tasks that are picked up when going from this to nextState
 	 * 
-	 * @param tasks
+	 * @param nextState
 	 * @return
 	 */
 	public List<Task> taskPickUpDifferences(State nextState) {
 		List<Task> differences = new ArrayList<Task>();
-		List<Task> nextTasks = nextState.getTakenTasks();
-		for (Task t : nextTasks) {
-			if (!takenTasks.contains(t)) {
-				differences.add(t);
+		for (int t = 0; t < index.size(); t++) {
+			if (TaskIndex.contains(free, t) && !TaskIndex.contains(nextState.free, t)) {
+				differences.add(index.tasks[t]);
 			}
 		}
 		return differences;
@@ -104,77 +106,127 @@ public class State {
 	/**
 	 * Returns the tasks that are delivered when going from this to nextState
 	 * 
-	 * @param tasks
+	 * @param nextState
 	 * @return
 	 */
 	public List<Task> taskDeliverDifferences(State nextState) {
 		List<Task> differences = new ArrayList<Task>();
-		List<Task> nextTasks = nextState.getDeliveredTasks();
-		for (Task t : nextTasks) {
-			if (!deliveredTasks.contains(t)) {
-				differences.add(t);
+		for (int t = 0; t < index.size(); t++) {
+			if (!nextState.isFree(t) && !nextState.isTaken(t) && (isFree(t) || isTaken(t))) {
+				differences.add(index.tasks[t]);
 			}
 		}
 		return differences;
 	}
 
 	/**
-	 * Create all reachable states from the current state
+	 * Create all reachable states from the current state. A move to a city
+	 * always comes with everything worth doing there (see moveTo), so the
+	 * children that would only differ by the order of these actions collapse
+	 * into one.
 	 * 
-	 * @param knownStates
-	 * @param vehicleCapacity
+	 * @param vehicle
 	 * @return
 	 */
-	public Set<State> computeChildren(Vehicle vehicle) {
+	public List<State> computeChildren(Vehicle vehicle) {
 		int vehicleCapacity = vehicle.capacity();
-		Set<State> returnedChildren = new HashSet<State>();
-
-		ArrayList<Task> childFreeTasks;
-		ArrayList<Task> childTakenTasks;
-		ArrayList<Task> childDeliveredTasks;
-
-		/************* Pickup a Task ***************/
-		int weightInVehicle = computeWeightOfAListOfTasks(takenTasks);
-		for (Task task : freeTasks) {
-			childFreeTasks = new ArrayList<Task>(freeTasks);
-			childTakenTasks = new ArrayList<Task>(takenTasks);
-			childDeliveredTasks = new ArrayList<Task>(deliveredTasks);
-			if (task.weight + weightInVehicle <= vehicleCapacity) {
-				childFreeTasks.remove(task);
-				childTakenTasks.add(task);
-				State childState = new State(task.pickupCity, childFreeTasks, childTakenTasks, childDeliveredTasks);
-				returnedChildren.add(childState);
+		List<State> returnedChildren = new ArrayList<State>();
+		// cities already reached by a child that picked up all it could there
+		boolean[] settledCities = new boolean[index.cities.size()];
+		// cities already reached by a child that only delivered
+		boolean[] deliveryCities = new boolean[index.cities.size()];
+
+		for (int t = 0; t < index.size(); t++) {
+			/************* Pickup a Task ***************/
+			if (isFree(t)) {
+				moveTo(index.pickupCity[t], t, vehicleCapacity, returnedChildren, settledCities, deliveryCities);
 			}
-		}
 
-		/************ Deliver a Task ***************/
-		for (Task task : takenTasks) {
-			childFreeTasks = new ArrayList<Task>(freeTasks);
-			childTakenTasks = new ArrayList<Task>(takenTasks);
-			childDeliveredTasks = new ArrayList<Task>(deliveredTasks);
-			childTakenTasks.remove(task);
-			childDeliveredTasks.add(task);
-			State childState = new State(task.deliveryCity, childFreeTasks, childTakenTasks, childDeliveredTasks);
-			returnedChildren.add(childState);
+			/************ Deliver a Task ***************/
+			if (isTaken(t)) {
+				moveTo(index.deliveryCity[t], -1, vehicleCapacity, returnedChildren, settledCities, deliveryCities);
+			}
 		}
 		return returnedChildren;
 	}
 
+	/**
+	 * Creates the child reached by moving to a city. Once there, the vehicle
+	 * delivers all the tasks it carries for this city, since delivering later
+	 * can only cost more capacity. Then it picks up the given task or, if all
+	 * the free tasks fit in the vehicle together, all the free tasks of the
+	 * city, since carrying them cannot prevent any later action.
+	 * 
+	 * @param city
+	 *            id of the destination
+	 * @param pickup
+	 *            task to pick up, -1 for none
+	 * @param capacity
+	 * @param children
+	 *            list of children to complete
+	 * @param settledCities
+	 *            cities reached by a child that picked up all the free tasks
+	 * @param deliveryCities
+	 *            cities reached by a child that only delivered
+	 */
+	private void moveTo(int city, int pickup, int capacity, List<State> children, boolean[] settledCities,
+			boolean[] deliveryCities) {
+		// check the move on the masks of this state before building the child
+		int childLoad = load;
+		int freeLoad = 0;
+		for (int t = 0; t < index.size(); t++) {
+			if (isTaken(t) && index.deliveryCity[t] == city) {
+				childLoad -= index.weight[t];
+			} else if (isFree(t)) {
+				freeLoad += index.weight[t];
+			}
+		}
+
+		boolean pickupAll = childLoad + freeLoad <= capacity;
+		if (pickupAll) {
+			if (settledCities[city]) {
+				return;
+			}
+			settledCities[city] = true;
+		} else if (pickup >= 0) {
+			if (childLoad + index.weight[pickup] > capacity) {
+				return;
+			}
+		} else {
+			if (deliveryCities[city]) {
+				return;
+			}
+			deliveryCities[city] = true;
+		}
+
+		long[] childFree = free.clone();
+		long[] childTaken = taken.clone();
+		for (int t = 0; t < index.size(); t++) {
+			if (isTaken(t) && index.deliveryCity[t] == city) {
+				childTaken[t >>> 6] &= ~(1L << t);
+			} else if (pickupAll && isFree(t) && index.pickupCity[t] == city) {
+				childFree[t >>> 6] &= ~(1L << t);
+				childTaken[t >>> 6] |= 1L << t;
+				childLoad += index.weight[t];
+			}
+		}
+		if (!pickupAll && pickup >= 0) {
+			childFree[pickup >>> 6] &= ~(1L << pickup);
+			childTaken[pickup >>> 6] |= 1L << pickup;
+			childLoad += index.weight[pickup];
+		}
+		children.add(new State(index, city, childFree, childTaken, childLoad));
+	}
+
 	@Override
 	public String toString() {
-		return "State [agentPosition=" + agentPosition + ", freeTasks=" + freeTasks + ", takenTasks=" + takenTasks
-				+ ", deliveredTasks=" + deliveredTasks + "]";
+		return "State [agentPosition=" + getAgentPosition() + ", freeTasks=" + getFreeTasks() + ", takenTasks="
+				+ getTakenTasks() + "]";
 	}
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((agentPosition == null) ? 0 : agentPosition.hashCode());
-		result = prime * result + ((deliveredTasks == null) ? 0 : deliveredTasks.hashCode());
-		result = prime * result + ((freeTasks == null) ? 0 : freeTasks.hashCode());
-		result = prime * result + ((takenTasks == null) ? 0 : takenTasks.hashCode());
-		return result;
+		return hash;
 	}
 
 	@Override
@@ -186,55 +238,47 @@ public class State {
 		if (getClass() != obj.getClass())
 			return false;
 		State other = (State) obj;
-
-		if (agentPosition == null) {
-			if (other.agentPosition != null)
-				return false;
-		} else if (!agentPosition.equals(other.agentPosition))
-			return false;
-		if (deliveredTasks == null) {
-			if (other.deliveredTasks != null)
-				return false;
-		} else if (!deliveredTasks.equals(other.deliveredTasks))
-			return false;
-		if (freeTasks == null) {
-			if (other.freeTasks != null)
-				return false;
-		} else if (!freeTasks.equals(other.freeTasks))
-			return false;
-		if (takenTasks == null) {
-			if (other.takenTasks != null)
-				return false;
-		} else if (!takenTasks.equals(other.takenTasks))
-			return false;
-		return true;
+		return hash == other.hash && agentPosition == other.agentPosition && Arrays.equals(free, other.free)
+				&& Arrays.equals(taken, other.taken);
 	}
 
 	protected City getAgentPosition() {
-		return agentPosition;
+		return index.cities.get(agentPosition);
 	}
 
-	protected ArrayList<Task> getFreeTasks() {
-		return new ArrayList<Task>(freeTasks);
+	protected int getAgentCity() {
+		return agentPosition;
 	}
 
-	protected ArrayList<Task> getTakenTasks() {
-		return new ArrayList<Task>(takenTasks);
+	protected TaskIndex getTaskIndex() {
+		return index;
 	}
 
-	protected ArrayList<Task> getDeliveredTasks() {
-		return new ArrayList<Task>(deliveredTasks);
+	protected boolean isFree(int task) {
+		return TaskIndex.contains(free, task);
 	}
 
-
-	protected double getDeliveredReward() {
-		return rewardDelivered;
+	protected boolean isTaken(int task) {
+		return TaskIndex.contains(taken, task);
 	}
 
-
-	protected double getUndeliveredReward() {
-		return rewardUndelivered;
+	protected ArrayList<Task> getFreeTasks() {
+		ArrayList<Task> tasks = new ArrayList<Task>();
+		for (int t = 0; t < index.size(); t++) {
+			if (isFree(t)) {
+				tasks.add(index.tasks[t]);
+			}
+		}
+		return tasks;
 	}
 
-
+	protected ArrayList<Task> getTakenTasks() {
+		ArrayList<Task> tasks = new ArrayList<Task>();
+		for (int t = 0; t < index.size(); t++) {
+			if (isTaken(t)) {
+				tasks.add(index.tasks[t]);
+			}
+		}
+		return tasks;
+	}
 }
@@ -2,25 +2,22 @@ package template;
 
 import java.util.Comparator;
 
-import logist.topology.Topology.City;
-
 public class StateDistanceComparator implements Comparator<State> {
 
-	private City city;
+	private int city;
 
 	public StateDistanceComparator() {
 		super();
-		city = null;
+		city = -1;
 	}
 
 	@Override
 	public int compare(State s1, State s2) {
-		Double d1 = s1.getAgentPosition().distanceTo(city);
-		Double d2 = s2.getAgentPosition().distanceTo(city);
-		return d1.compareTo(d2);
+		DistanceTable distances = s1.getTaskIndex().distances;
+		return Double.compare(distances.between(s1.getAgentCity(), city), distances.between(s2.getAgentCity(), city));
 	}
 
 	public void setState(State s) {
-		city = s.getAgentPosition();
+		city = s.getAgentCity();
 	}
 }
@@ -0,0 +1,81 @@
+package template;
+
+import java.util.List;
+
+import logist.task.Task;
+import logist.topology.Topology.City;
+
+/**
+ * Numbering of the tasks of a planning problem. States refer to tasks and
+ * cities by their index only, and read their pickup city, delivery city and
+ * weight from the primitive arrays of this class, and the distances between
+ * cities from its DistanceTable.
+ * 
+ * @author Marc Schaer and Cynthia Oeschger
+ *
+ */
+class TaskIndex {
+
+	final List<City> cities;
+	final DistanceTable distances;
+	final Task[] tasks;
+	final int[] pickupCity;
+	final int[] deliveryCity;
+	final int[] weight;
+	// Distance from the pickup city to the delivery city of each task
+	final double[] taskDistance;
+	// Number of long words needed to store one bit per task
+	final int words;
+
+	public TaskIndex(DistanceTable distances, List<Task> tasks) {
+		this.cities = distances.cities;
+		this.distances = distances;
+		this.tasks = tasks.toArray(new Task[tasks.size()]);
+		int size = this.tasks.length;
+		pickupCity = new int[size];
+		deliveryCity = new int[size];
+		weight = new int[size];
+		taskDistance = new double[size];
+		for (int i = 0; i < size; i++) {
+			pickupCity[i] = this.tasks[i].pickupCity.id;
+			deliveryCity[i] = this.tasks[i].deliveryCity.id;
+			weight[i] = this.tasks[i].weight;
+			taskDistance[i] = distances.between(pickupCity[i], deliveryCity[i]);
+		}
+		words = Math.max(1, (size + 63) / 64);
+	}
+
+	public int size() {
+		return tasks.length;
+	}
+
+	/**
+	 * Gives the bit mask of a set of tasks
+	 * 
+	 * @param subset
+	 *            tasks of this index
+	 * @return one bit per task of the subset
+	 */
+	public long[] mask(List<Task> subset) {
+		long[] mask = new long[words];
+		for (Task t : subset) {
+			for (int i = 0; i < tasks.length; i++) {
+				if (tasks[i].equals(t)) {
+					mask[i >>> 6] |= 1L << i;
+				}
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Tells if the bit of a task is set in a mask
+	 * 
+	 * @param mask
+	 * @param task
+	 * @return true if the task is in the mask
+	 */
+	public static boolean contains(long[] mask, int task) {
+		return (mask[task >>> 6] & (1L << task)) != 0;
+	}
+}
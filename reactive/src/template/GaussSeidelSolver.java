@@ -0,0 +1,41 @@
+package template;
+
+/**
+ * In-place (Gauss-Seidel) value iteration: a new V(s) is used by the
+ * following states of the same sweep, which usually needs fewer sweeps than
+ * value iteration when the discount is close to 1
+ */
+class GaussSeidelSolver implements ReactiveSolver {
+
+	@Override
+	public int solve(ReactiveAbstractAgent model, double[] R, double[] V, int[] Best) {
+		// Expected value of arriving in each city, kept up to date with V
+		double[] expectedV = new double[model.numCities];
+
+		int loops = 0;
+		double difference;
+		do {
+			// Recomputed at each sweep to avoid accumulating rounding errors
+			model.expectedValues(V, expectedV);
+			difference = 0;
+			for (int i = 0; i < model.numStates; i++) {
+				double bestQ = 0;
+				int bestAction = -1;
+				for (int j = 0; j < model.numActions; j++) {
+					double Q = model.q(R, expectedV, i, j);
+					if (bestAction < 0 || Q > bestQ) {
+						bestQ = Q;
+						bestAction = j;
+					}
+				}
+				double change = bestQ - V[i];
+				expectedV[model.cityOfState(i)] += model.arrival[i] * change;
+				V[i] = bestQ;
+				Best[i] = bestAction;
+				difference = Math.max(difference, Math.abs(change));
+			}
+			loops++;
+		} while (difference > model.epsilon && loops < model.maxIterations);
+		return loops;
+	}
+}
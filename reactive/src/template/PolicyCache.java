@@ -0,0 +1,171 @@
+package template;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * On-disk cache of V(S) and Best(S). A policy is stored in a binary file named
+ * after a hash of everything the solver reads (R(s,a), T(s,a,s'), discount and
+ * convergence parameters), so it is found again whenever the topology, the task
+ * distribution, the cost per km and the agent properties are the same.
+ */
+class PolicyCache {
+
+	private static final int MAGIC = 0x52504331; // "RPC1"
+	private static final int BUFFER_SIZE = 1 << 13;
+
+	private final File directory;
+
+	public PolicyCache(String directory) {
+		this.directory = new File(directory);
+	}
+
+	/**
+	 * Computes the key of the policy of a model
+	 * 
+	 * @param model
+	 * @param R
+	 * @param solverName
+	 * @return SHA-1 of the inputs of the solver
+	 */
+	public byte[] key(ReactiveAbstractAgent model, double[] R, String solverName) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.putInt(model.numStates).putInt(model.numActions).putInt(model.maxIterations);
+		buffer.putDouble(model.discount).putDouble(model.epsilon);
+		for (double value : R) {
+			flushIfFull(digest, buffer);
+			buffer.putDouble(value);
+		}
+		for (int city : model.nextCity) {
+			flushIfFull(digest, buffer);
+			buffer.putInt(city);
+		}
+		for (double probability : model.arrival) {
+			flushIfFull(digest, buffer);
+			buffer.putDouble(probability);
+		}
+		buffer.flip();
+		digest.update(buffer);
+		digest.update(solverName.getBytes());
+		return digest.digest();
+	}
+
+	/**
+	 * Loads a policy from the cache
+	 * 
+	 * @param key
+	 * @param V
+	 *            filled with V(S) if the policy is found
+	 * @param Best
+	 *            filled with Best(S) if the policy is found
+	 * @return true if the policy was found
+	 */
+	public boolean load(byte[] key, double[] V, int[] Best) {
+		File file = fileOf(key);
+		if (!file.isFile()) {
+			return false;
+		}
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+			byte[] storedKey = new byte[key.length];
+			if (in.readInt() != MAGIC || in.readInt() != V.length) {
+				return false;
+			}
+			in.readFully(storedKey);
+			if (!Arrays.equals(key, storedKey)) {
+				return false;
+			}
+			for (int i = 0; i < V.length; i++) {
+				V[i] = in.readDouble();
+			}
+			for (int i = 0; i < Best.length; i++) {
+				Best[i] = in.readInt();
+			}
+			return true;
+		} catch (IOException e) {
+			System.out.println("There is a problem loading the policy from " + file + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Stores a policy in the cache
+	 * 
+	 * @param key
+	 * @param V
+	 * @param Best
+	 */
+	public void store(byte[] key, double[] V, int[] Best) {
+		File file = fileOf(key);
+		// Written in a temporary file first so that concurrent agents never
+		// read a partial policy
+		File temp = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			System.out.println("There is a problem creating the policy cache " + directory);
+			return;
+		}
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE))) {
+				writePolicy(out, key, V, Best);
+			}
+			if (!temp.renameTo(file) && !file.isFile()) {
+				throw new IOException("cannot rename " + temp + " to " + file);
+			}
+		} catch (IOException e) {
+			System.out.println("There is a problem storing the policy in " + file + ": " + e.getMessage());
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Writes the header, the key, V(S) and Best(S)
+	 */
+	private void writePolicy(DataOutputStream out, byte[] key, double[] V, int[] Best) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(V.length);
+		out.write(key);
+		for (double value : V) {
+			out.writeDouble(value);
+		}
+		for (int action : Best) {
+			out.writeInt(action);
+		}
+	}
+
+	/**
+	 * Gives the file of a policy, named after the hexadecimal key
+	 */
+	private File fileOf(byte[] key) {
+		StringBuilder name = new StringBuilder();
+		for (byte b : key) {
+			name.append(String.format("%02x", b));
+		}
+		return new File(directory, name.append(".policy").toString());
+	}
+
+	private static void flushIfFull(MessageDigest digest, ByteBuffer buffer) {
+		if (buffer.remaining() < 8) {
+			buffer.flip();
+			digest.update(buffer);
+			buffer.clear();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package template;
+
+/**
+ * Modified policy iteration: each greedy improvement of Best(S) is followed by
+ * a few cheap evaluation sweeps of the fixed policy, which only compute
+ * R(s,Best(s)) + discount * sum of T(s,Best(s),s') * V(s')
+ */
+class PolicyIterationSolver implements ReactiveSolver {
+
+	private static final int EVALUATION_SWEEPS = 20;
+
+	@Override
+	public int solve(ReactiveAbstractAgent model, double[] R, double[] V, int[] Best) {
+		// Expected value of arriving in each city, kept up to date with V
+		double[] expectedV = new double[model.numCities];
+
+		int loops = 0;
+		double difference;
+		do {
+			// Policy improvement
+			model.expectedValues(V, expectedV);
+			difference = 0;
+			for (int i = 0; i < model.numStates; i++) {
+				double bestQ = 0;
+				int bestAction = -1;
+				for (int j = 0; j < model.numActions; j++) {
+					double Q = model.q(R, expectedV, i, j);
+					if (bestAction < 0 || Q > bestQ) {
+						bestQ = Q;
+						bestAction = j;
+					}
+				}
+				double change = bestQ - V[i];
+				expectedV[model.cityOfState(i)] += model.arrival[i] * change;
+				V[i] = bestQ;
+				Best[i] = bestAction;
+				difference = Math.max(difference, Math.abs(change));
+			}
+			loops++;
+
+			// Partial policy evaluation
+			for (int k = 0; k < EVALUATION_SWEEPS && difference > model.epsilon && loops < model.maxIterations; k++) {
+				double evaluationDifference = 0;
+				for (int i = 0; i < model.numStates; i++) {
+					double change = model.q(R, expectedV, i, Best[i]) - V[i];
+					expectedV[model.cityOfState(i)] += model.arrival[i] * change;
+					V[i] += change;
+					evaluationDifference = Math.max(evaluationDifference, Math.abs(change));
+				}
+				loops++;
+				if (evaluationDifference <= model.epsilon) {
+					break;
+				}
+			}
+		} while (difference > model.epsilon && loops < model.maxIterations);
+		return loops;
+	}
+}
@@ -0,0 +1,198 @@
+package template;
+
+/**
+ * Prioritized sweeping: the states are updated one at a time in decreasing
+ * order of their Bellman error, and only the states which can lead to the city
+ * of an updated state get a new priority
+ */
+class PrioritizedSweepingSolver implements ReactiveSolver {
+
+	@Override
+	public int solve(ReactiveAbstractAgent model, double[] R, double[] V, int[] Best) {
+		int numStates = model.numStates;
+		int numCities = model.numCities;
+
+		// Predecessors of each city: the states having an action leading to
+		// it, stored as predecessors[predecessorsStart[c]..predecessorsStart[c+1])
+		int[] predecessorsStart = new int[numCities + 1];
+		for (int i = 0; i < numStates; i++) {
+			for (int j = 0; j < model.numActions; j++) {
+				int city = model.nextCity[model.stateActionOffset(i, j)];
+				if (city >= 0 && !leadsToCity(model, i, j, city)) {
+					predecessorsStart[city + 1]++;
+				}
+			}
+		}
+		for (int c = 0; c < numCities; c++) {
+			predecessorsStart[c + 1] += predecessorsStart[c];
+		}
+		int[] predecessors = new int[predecessorsStart[numCities]];
+		int[] fill = predecessorsStart.clone();
+		for (int i = 0; i < numStates; i++) {
+			for (int j = 0; j < model.numActions; j++) {
+				int city = model.nextCity[model.stateActionOffset(i, j)];
+				if (city >= 0 && !leadsToCity(model, i, j, city)) {
+					predecessors[fill[city]++] = i;
+				}
+			}
+		}
+
+		double[] expectedV = new double[numCities];
+		model.expectedValues(V, expectedV);
+
+		StateHeap heap = new StateHeap(numStates);
+		for (int i = 0; i < numStates; i++) {
+			heap.update(i, Math.abs(bestQ(model, R, expectedV, i) - V[i]));
+		}
+
+		long updates = 0;
+		long maxUpdates = (long) model.maxIterations * numStates;
+		while (!heap.isEmpty() && heap.topPriority() > model.epsilon && updates < maxUpdates) {
+			int s = heap.poll();
+			double change = bestQ(model, R, expectedV, s) - V[s];
+			int city = model.cityOfState(s);
+			expectedV[city] += model.arrival[s] * change;
+			V[s] += change;
+			updates++;
+
+			for (int k = predecessorsStart[city]; k < predecessorsStart[city + 1]; k++) {
+				int predecessor = predecessors[k];
+				heap.update(predecessor, Math.abs(bestQ(model, R, expectedV, predecessor) - V[predecessor]));
+			}
+		}
+
+		// Best(S) is given by a last greedy sweep
+		model.expectedValues(V, expectedV);
+		for (int i = 0; i < numStates; i++) {
+			double bestQ = 0;
+			int bestAction = -1;
+			for (int j = 0; j < model.numActions; j++) {
+				double Q = model.q(R, expectedV, i, j);
+				if (bestAction < 0 || Q > bestQ) {
+					bestQ = Q;
+					bestAction = j;
+				}
+			}
+			Best[i] = bestAction;
+		}
+		return (int) ((updates + numStates - 1) / numStates) + 1;
+	}
+
+	/**
+	 * Tells if an action before the given one already leads to the city, to
+	 * count each predecessor only once
+	 */
+	private boolean leadsToCity(ReactiveAbstractAgent model, int state, int action, int city) {
+		for (int j = 0; j < action; j++) {
+			if (model.nextCity[model.stateActionOffset(state, j)] == city) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gives max over a of Q(s,a)
+	 */
+	private double bestQ(ReactiveAbstractAgent model, double[] R, double[] expectedV, int state) {
+		double bestQ = model.q(R, expectedV, state, 0);
+		for (int j = 1; j < model.numActions; j++) {
+			bestQ = Math.max(bestQ, model.q(R, expectedV, state, j));
+		}
+		return bestQ;
+	}
+
+	/**
+	 * Binary max-heap of states indexed by state, so that the priority of a
+	 * state can be changed in O(log n)
+	 */
+	private static final class StateHeap {
+		private final int[] heap;
+		// Position of each state in the heap, -1 if absent
+		private final int[] position;
+		private final double[] priority;
+		private int size = 0;
+
+		StateHeap(int numStates) {
+			heap = new int[numStates];
+			position = new int[numStates];
+			priority = new double[numStates];
+			for (int i = 0; i < numStates; i++) {
+				position[i] = -1;
+			}
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		double topPriority() {
+			return priority[heap[0]];
+		}
+
+		/**
+		 * Inserts the state or changes its priority
+		 */
+		void update(int state, double newPriority) {
+			if (position[state] < 0) {
+				heap[size] = state;
+				position[state] = size;
+				priority[state] = newPriority;
+				siftUp(size++);
+			} else {
+				double oldPriority = priority[state];
+				priority[state] = newPriority;
+				if (newPriority > oldPriority) {
+					siftUp(position[state]);
+				} else {
+					siftDown(position[state]);
+				}
+			}
+		}
+
+		int poll() {
+			int top = heap[0];
+			position[top] = -1;
+			size--;
+			if (size > 0) {
+				heap[0] = heap[size];
+				position[heap[0]] = 0;
+				siftDown(0);
+			}
+			return top;
+		}
+
+		private void siftUp(int index) {
+			int state = heap[index];
+			while (index > 0) {
+				int parent = (index - 1) / 2;
+				if (priority[heap[parent]] >= priority[state]) {
+					break;
+				}
+				heap[index] = heap[parent];
+				position[heap[index]] = index;
+				index = parent;
+			}
+			heap[index] = state;
+			position[state] = index;
+		}
+
+		private void siftDown(int index) {
+			int state = heap[index];
+			while (2 * index + 1 < size) {
+				int child = 2 * index + 1;
+				if (child + 1 < size && priority[heap[child + 1]] > priority[heap[child]]) {
+					child++;
+				}
+				if (priority[heap[child]] <= priority[state]) {
+					break;
+				}
+				heap[index] = heap[child];
+				position[heap[index]] = index;
+				index = child;
+			}
+			heap[index] = state;
+			position[state] = index;
+		}
+	}
+}
@@ -12,6 +12,7 @@ import logist.task.Task;
 import logist.task.TaskDistribution;
 import logist.topology.Topology;
 import logist.topology.Topology.City;
+import template.ReactiveStats.Level;
 
 public class RandomAgent extends ReactiveAbstractAgent implements ReactiveBehavior {
 
@@ -25,34 +26,46 @@ public class RandomAgent extends ReactiveAbstractAgent implements ReactiveBehavi
 
 		this.random = new Random();
 		this.pPickup = discount;
-		System.out.println("Random Agent " + agent.id() + " (vehicle " + agent.vehicles().get(0).name() + ")");
+		if (stats.isEnabled(Level.SUMMARY)) {
+			for (Vehicle vehicle : agent.vehicles()) {
+				stats.log(Level.SUMMARY, "Random Agent " + agent.id() + " (vehicle " + vehicle.name() + ")");
+			}
+		}
 	}
 
 	@Override
 	public Action act(Vehicle vehicle, Task availableTask) {
 		Action action;
+		double[] R = policyOf(vehicle).R;
 		City currentCity = vehicle.getCurrentCity();
 		int indexBest;
+		double reward;
 
 		if (availableTask == null || random.nextDouble() > pPickup) {
 			City next = currentCity.randomNeighbor(random);
-			indexBest = indexFromCityAndTask(currentCity.id, next.id, numCities);
-			System.out.println(
-					vehicle.name() + " there is no task from " + currentCity + ". Benefit : " + R[indexBest][0]);
+			// The random neighbour is not an action of the model with every
+			// action space, so the benefit is the cost of the move itself
+			reward = -distanceBetween(currentCity.id, next.id) * vehicle.costPerKm();
 			action = new Move(next);
-			generalReward += R[indexBest][0];
+			stats.recordAction(reward, false);
+			if (stats.isEnabled(Level.ACTIONS)) {
+				stats.log(Level.ACTIONS, vehicle.name() + " there is no task from " + currentCity + ". Benefit : "
+						+ reward);
+			}
 		} else {
-			indexBest = indexFromCityAndTask(currentCity.id, availableTask.deliveryCity.id, numCities);
-			System.out.println(vehicle.name() + " takes the task from " + availableTask.pickupCity + " to "
-					+ availableTask.deliveryCity + ". Benefit : " + R[indexBest][1]);
+			indexBest = indexFromCityAndTask(currentCity.id, availableTask.deliveryCity.id);
+			reward = R[stateActionOffset(indexBest, PICKUP)];
 			action = new Pickup(availableTask);
-			generalReward += R[indexBest][1];
+			stats.recordAction(reward, true);
+			if (stats.isEnabled(Level.ACTIONS)) {
+				stats.log(Level.ACTIONS, vehicle.name() + " takes the task from " + availableTask.pickupCity + " to "
+						+ availableTask.deliveryCity + ". Benefit : " + reward);
+			}
+		}
+		if (stats.isEnabled(Level.ACTIONS)) {
+			stats.log(Level.ACTIONS, "Random Agent, vehicle : " + vehicle.name() + ", average reward : "
+					+ stats.getAverageReward() + ", nbOfActions : " + stats.getActions());
 		}
-		nbOfActions++;
-		//System.out.println("Random Agent, vehicle : " + vehicle.name() + ", general reward : " + generalReward);
-		System.out.println(
-				"Random Agent, vehicle : " + vehicle.name() + ", average reward : " + generalReward / nbOfActions);
-		System.out.println("nbOfActions Random : " + nbOfActions);
 		return action;
 	}
 }
@@ -1,6 +1,8 @@
 package template;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import logist.agent.Agent;
@@ -11,74 +13,275 @@ import logist.topology.Topology;
 import logist.topology.Topology.City;
 
 public abstract class ReactiveAbstractAgent implements ReactiveBehavior {
-	protected Double[][] p;
-	protected Integer[][] r;
+
+	enum ActionSpace {
+		// move to the closest neighbour or take the task
+		CLOSEST,
+		// move to any neighbour or take the task
+		NEIGHBOURS
+	}
+
+	// Flat row-major matrices indexed with cityPairOffset(city1, city2)
+	protected double[] p;
+	protected int[] r;
 	protected List<City> cities;
 	protected int numCities;
 	protected static final double EPSILON = 0.0001;
+	protected static final int MAX_ITERATIONS = 100000;
+	protected static final int NO_TASK = -1;
+	// Action 1 takes the task, the other actions are moves (see moveAction())
+	protected static final int PICKUP = 1;
 	protected int numStates;
 	protected int numActions;
+	protected ActionSpace actionSpace;
+	// Number of move actions
+	protected int numMoves;
+	// V(S) and Best(S) of the first vehicle
 	protected double[] V;
-	protected Double generalReward = 0.0;
-	protected int nbOfActions = 0;
 	protected int[] Best;
-	protected Double discount;
-	protected Double R[][];
-	protected Double[] pTask;
-	protected Double[][][] T;
+	protected ReactiveStats stats;
+	protected double discount;
+	protected double epsilon;
+	protected int maxIterations;
+	protected int threads;
+	// Flat matrix R(s,a) indexed with stateActionOffset(state, action), for
+	// the first vehicle
+	protected double[] R;
+	// One policy per distinct cost per km of the vehicles
+	protected ReactivePolicy[] policies;
+	protected double[] pTask;
+	// Flat matrix of the distances indexed with cityPairOffset(city1, city2)
+	protected double[] distances;
+	// Id of the closest neighbour of each city
+	protected int[] closestNeighbours;
+	// Destinations of the moves of each city, closest first, indexed with
+	// city * numMoves + move, -1 if the city has less neighbours
+	protected int[] moveTargets;
+	// Source city and task destination (or NO_TASK) of each state
+	protected int[] stateSource;
+	protected int[] stateDestination;
+	// Sparse T(s,a,s'): city reached by (s,a), indexed with
+	// stateActionOffset(state, action), -1 if the action is impossible
+	protected int[] nextCity;
+	// Probability of each state s' once its city is reached
+	protected double[] arrival;
 
 	@Override
 	public void setup(Topology topology, TaskDistribution td, Agent agent) {
 		// Reads the discount factor from the agents.xml file.
 		// If the property is not present it defaults to 0.95
 		discount = agent.readProperty("discount-factor", Double.class, 0.95);
+		// Convergence threshold and maximum number of sweeps over the states
+		// used to compute V(S)
+		epsilon = agent.readProperty("epsilon", Double.class, EPSILON);
+		maxIterations = agent.readProperty("max-iterations", Integer.class, MAX_ITERATIONS);
+		// Number of threads used to compute V(S), defaults to 1
+		threads = Math.max(1, agent.readProperty("threads", Integer.class, 1));
+		// Console output: NONE, SUMMARY (default), ACTIONS or DEBUG
+		String level = agent.readProperty("log-level", String.class, "SUMMARY");
+		stats = new ReactiveStats(getClass().getSimpleName() + " " + agent.id(),
+				ReactiveStats.Level.valueOf(level.toUpperCase()));
+
+		// Throws IllegalArgumentException if the action space is unknown
+		String actionSpaceName = agent.readProperty("action-space", String.class, "CLOSEST");
+		actionSpace = ActionSpace.valueOf(actionSpaceName.toUpperCase());
 
 		cities = topology.cities();
 		numCities = cities.size();
 
 		numStates = numCities * numCities;
-		numActions = 2;
 
-		pTask = new Double[numCities];
+		pTask = new double[numCities];
 
-		R = new Double[numStates][numActions];
+		computeStates();
+
+		computeDistances();
+
+		computeMoves();
+		numActions = numMoves + 1;
 
 		createRAndP(td);
 		
-		computeR(agent);
+		computePolicies(agent);
+
+		computeT();
 	}
 
 	/**
-	 * Compute matrix R(s,a)
+	 * Creates one policy per distinct cost per km of the vehicles of the
+	 * agent, with its matrix R(s,a)
+	 * 
 	 * @param agent
 	 */
-	protected void computeR(Agent agent) {
-		// One agent has only one vehicle
-		Vehicle vehicle = agent.vehicles().get(0);
+	protected void computePolicies(Agent agent) {
+		List<ReactivePolicy> distinctPolicies = new ArrayList<ReactivePolicy>();
+		for (Vehicle vehicle : agent.vehicles()) {
+			boolean known = false;
+			for (ReactivePolicy policy : distinctPolicies) {
+				known |= policy.costPerKm == vehicle.costPerKm();
+			}
+			if (!known) {
+				double[] vehicleR = computeR(vehicle.costPerKm());
+				distinctPolicies.add(new ReactivePolicy(vehicle.costPerKm(), vehicleR, numStates));
+			}
+		}
+		policies = distinctPolicies.toArray(new ReactivePolicy[distinctPolicies.size()]);
+		R = policies[0].R;
+	}
+
+	/**
+	 * Gives the policy of a vehicle
+	 * 
+	 * @param vehicle
+	 * @return the policy computed for the cost per km of the vehicle
+	 */
+	protected ReactivePolicy policyOf(Vehicle vehicle) {
+		for (ReactivePolicy policy : policies) {
+			if (policy.costPerKm == vehicle.costPerKm()) {
+				return policy;
+			}
+		}
+		throw new IllegalArgumentException("No policy for vehicle " + vehicle.name());
+	}
+
+	/**
+	 * Compute matrix R(s,a) for a vehicle
+	 * @param costPerKm cost per km of the vehicle
+	 * @return R(s,a)
+	 */
+	protected double[] computeR(int costPerKm) {
+		double[] R = new double[numStates * numActions];
 
 		// When the action is to move without taking the task
 		// the reward is -distance*(cost/km).
 		for (int i = 0; i < numStates; i++) {
-			Integer ct[] = cityAndTaskFromIndex(i, numCities);
-			if (ct[1] != null) {
-				R[i][0] = -distanceBetween(cities, ct[0], ct[1]) * vehicle.costPerKm();
+			int source = stateSource[i];
+			int destination = stateDestination[i];
+			if (actionSpace == ActionSpace.CLOSEST) {
+				if (destination != NO_TASK) {
+					R[stateActionOffset(i, 0)] = -distanceBetween(source, destination) * costPerKm;
+				} else {
+					R[stateActionOffset(i, 0)] = -distanceBetween(source, closestNeighbours[source]) * costPerKm;
+				}
 			} else {
-				City A = cities.get(ct[0]);
-				City nNeighbour = closestNeighbour(A);
-				R[i][0] = -A.distanceTo(nNeighbour) * vehicle.costPerKm();
+				for (int move = 0; move < numMoves; move++) {
+					int target = moveTargets[source * numMoves + move];
+					if (target < 0) {
+						// The city has less neighbours than the others
+						R[stateActionOffset(i, moveAction(move))] = -Double.MAX_VALUE;
+					} else {
+						R[stateActionOffset(i, moveAction(move))] = -distanceBetween(source, target) * costPerKm;
+					}
+				}
 			}
 		}
 
 		// Otherwise, we take the reward from matrix r minus the travel cost
 		for (int i = 0; i < numStates; i++) {
-			Integer ct[] = cityAndTaskFromIndex(i, numCities);
-			if (ct[1] != null) {
-				R[i][1] = r[ct[0]][ct[1]] - distanceBetween(cities, ct[0], ct[1]) * vehicle.costPerKm();
+			int source = stateSource[i];
+			int destination = stateDestination[i];
+			if (destination != NO_TASK) {
+				R[stateActionOffset(i, PICKUP)] = r[cityPairOffset(source, destination)]
+						- distanceBetween(source, destination) * costPerKm;
 			} else {
 				// Should not be possible to deliver a task when there is none
-				R[i][1] = -Double.MAX_VALUE;
+				R[stateActionOffset(i, PICKUP)] = -Double.MAX_VALUE;
 			}
 		}
+		return R;
+	}
+
+	/**
+	 * Compute the sparse representation of T(s,a,s').
+	 * 
+	 * From a state, an action always leads to a single city (a neighbour when
+	 * moving, the task destination when delivering) and the
+	 * probability to reach a state of this city only depends on the task
+	 * available there. T(s,a,s') is then arrival[s'] if s' is a state of
+	 * nextCity[s,a] and 0 otherwise, so we only keep these two arrays.
+	 */
+	protected void computeT() {
+		nextCity = new int[numStates * numActions];
+		arrival = new double[numStates];
+
+		for (int i = 0; i < numStates; i++) {
+			int source = stateSource[i];
+			int destination = stateDestination[i];
+
+			// Probability to find this task (or no task) when arriving in the
+			// city
+			if (destination == NO_TASK) {
+				arrival[i] = 1 - pTask[source];
+			} else {
+				arrival[i] = p[cityPairOffset(source, destination)];
+			}
+
+			// When the action is to move without taking the task, we go to the
+			// neighbour of the move (-1 if the city has less neighbours)
+			for (int move = 0; move < numMoves; move++) {
+				nextCity[stateActionOffset(i, moveAction(move))] = moveTargets[source * numMoves + move];
+			}
+
+			// When the action is to deliver the task, we go to its destination
+			// (NO_TASK if there is none)
+			nextCity[stateActionOffset(i, PICKUP)] = destination;
+		}
+	}
+
+	/**
+	 * Gives the expected value of arriving in a city, i.e. the sum of
+	 * T(s,a,s') * V(s') over the states s' of the city
+	 * 
+	 * @param city
+	 * @param V
+	 * @return expected value of arriving in the city
+	 */
+	protected double expectedValue(int city, double[] V) {
+		int first = city * numCities;
+		double sum = 0;
+		for (int k = first; k < first + numCities; k++) {
+			sum += arrival[k] * V[k];
+		}
+		return sum;
+	}
+
+	/**
+	 * Computes the expected value of arriving in each city
+	 * 
+	 * @param V
+	 * @param expectedV
+	 *            filled with the expected value of each city
+	 */
+	protected void expectedValues(double[] V, double[] expectedV) {
+		for (int c = 0; c < numCities; c++) {
+			expectedV[c] = expectedValue(c, V);
+		}
+	}
+
+	/**
+	 * Gives Q(s,a) = R(s,a) + discount * sum over s' of T(s,a,s') * V(s')
+	 * 
+	 * @param R
+	 * @param expectedV
+	 *            expected value of arriving in each city
+	 * @param state
+	 * @param action
+	 * @return Q(s,a)
+	 */
+	protected double q(double[] R, double[] expectedV, int state, int action) {
+		int city = nextCity[stateActionOffset(state, action)];
+		double TsaV = city < 0 ? 0 : expectedV[city];
+		return R[stateActionOffset(state, action)] + discount * TsaV;
+	}
+
+	/**
+	 * Gives the city in which a state is
+	 * 
+	 * @param state
+	 * @return the city of the state
+	 */
+	protected int cityOfState(int state) {
+		return stateSource[state];
 	}
 
 	/**
@@ -90,14 +293,14 @@ public abstract class ReactiveAbstractAgent implements ReactiveBehavior {
 		// to city2)
 		int idC1 = 0;
 		int idC2 = 0;
-		r = new Integer[numCities][numCities];
-		p = new Double[numCities][numCities];
+		r = new int[numCities * numCities];
+		p = new double[numCities * numCities];
 		for (City c1 : cities) {
 			pTask[idC1] = 0.0;
 			for (City c2 : cities) {
-				r[idC1][idC2] = td.reward(c1, c2);
-				p[idC1][idC2] = td.probability(c1, c2);
-				pTask[idC1] += p[idC1][idC2];
+				r[cityPairOffset(idC1, idC2)] = td.reward(c1, c2);
+				p[cityPairOffset(idC1, idC2)] = td.probability(c1, c2);
+				pTask[idC1] += p[cityPairOffset(idC1, idC2)];
 				idC2++;
 			}
 			idC1++;
@@ -106,44 +309,106 @@ public abstract class ReactiveAbstractAgent implements ReactiveBehavior {
 	}
 
 	/**
-	 * Gives the maximum value of a vector with its index
+	 * Gives the offset of the pair (city1, city2) in the flat matrices p and r
+	 * 
+	 * @param city1
+	 * @param city2
+	 * @return offset of the pair in p and r
+	 */
+	protected int cityPairOffset(int city1, int city2) {
+		return city1 * numCities + city2;
+	}
+
+	/**
+	 * Gives the offset of the pair (state, action) in the flat matrix R
 	 * 
-	 * @param vector
-	 * @return max value of a vector with its index
+	 * @param state
+	 * @param action
+	 * @return offset of the pair in R
 	 */
-	protected double[] max(double vector[]) {
-		double max = Double.MIN_VALUE;
-		int index = -1;
-		double[] retVal = new double[2];
-		for (int i = 0; i < vector.length; i++) {
-			if (vector[i] > max || max == Double.MIN_VALUE) {
-				max = vector[i];
-				index = i;
+	protected int stateActionOffset(int state, int action) {
+		return state * numActions + action;
+	}
+
+	/**
+	 * Precomputes the distance between every pair of cities and the closest
+	 * neighbour of every city
+	 */
+	protected void computeDistances() {
+		distances = new double[numCities * numCities];
+		closestNeighbours = new int[numCities];
+		for (City c1 : cities) {
+			for (City c2 : cities) {
+				distances[cityPairOffset(c1.id, c2.id)] = c1.distanceTo(c2);
 			}
 		}
-		retVal[0] = max;
-		retVal[1] = index;
-		return retVal;
-
+		for (City city : cities) {
+			int closestNeighbour = -1;
+			double minDistance = -1;
+			for (City neighbour : city.neighbors()) {
+				double distance = distanceBetween(city.id, neighbour.id);
+				if (distance < minDistance || minDistance < 0) {
+					minDistance = distance;
+					closestNeighbour = neighbour.id;
+				}
+			}
+			closestNeighbours[city.id] = closestNeighbour;
+		}
 	}
 
 	/**
-	 * Computes the maximum difference between two elements of two vectors
-	 * 
-	 * @param oldV
-	 * @param newV
-	 * @return the maximum difference between two elements of two vectors
+	 * Precomputes the destinations of the moves of every city: only the
+	 * closest neighbour with the CLOSEST action space, all the neighbours
+	 * sorted by distance with the NEIGHBOURS action space
 	 */
-	protected double computeDifference(double[] oldV, double[] newV) {
-		double max = new Double(-1);
-		double difference;
-		for (int i = 0; i < oldV.length; i++) {
-			difference = Math.abs(oldV[i] - newV[i]);
-			if (difference > max || max == -1) {
-				max = difference;
+	protected void computeMoves() {
+		if (actionSpace == ActionSpace.CLOSEST) {
+			numMoves = 1;
+			moveTargets = closestNeighbours.clone();
+			return;
+		}
+
+		numMoves = 0;
+		for (City city : cities) {
+			numMoves = Math.max(numMoves, city.neighbors().size());
+		}
+		moveTargets = new int[numCities * numMoves];
+		for (final City city : cities) {
+			List<City> neighbours = new ArrayList<City>(city.neighbors());
+			Collections.sort(neighbours, new Comparator<City>() {
+				@Override
+				public int compare(City c1, City c2) {
+					return Double.compare(distanceBetween(city.id, c1.id), distanceBetween(city.id, c2.id));
+				}
+			});
+			for (int move = 0; move < numMoves; move++) {
+				moveTargets[city.id * numMoves + move] = move < neighbours.size() ? neighbours.get(move).id : -1;
 			}
 		}
-		return max;
+	}
+
+	/**
+	 * Gives the action moving to the move-th closest neighbour. Move 0 is
+	 * action 0 so that action 1 is always PICKUP.
+	 * 
+	 * @param move
+	 * @return the action of the move
+	 */
+	protected int moveAction(int move) {
+		return move == 0 ? 0 : move + 1;
+	}
+
+	/**
+	 * Gives the destination of a move action
+	 * 
+	 * @param city
+	 * @param action
+	 *            a move action
+	 * @return the id of the destination city
+	 */
+	protected int moveTarget(int city, int action) {
+		int move = action == 0 ? 0 : action - 1;
+		return moveTargets[city * numMoves + move];
 	}
 
 	/**
@@ -153,75 +418,55 @@ public abstract class ReactiveAbstractAgent implements ReactiveBehavior {
 	 * @return the closest neighbour of a city
 	 */
 	public City closestNeighbour(City city) {
-		City closestNeighbour = null;
-		double minDistance = -1;
-		List<City> neighbours = city.neighbors();
-		Iterator<City> it = neighbours.iterator();
-		while (it.hasNext()) {
-			City neighbour = (City) it.next();
-			if (city.distanceTo(neighbour) < minDistance || minDistance < 0) {
-				minDistance = city.distanceTo(neighbour);
-				closestNeighbour = neighbour;
-			}
-		}
-		return closestNeighbour;
+		return cities.get(closestNeighbours[city.id]);
 	}
 
 	/**
-	 * Gives the source and the task destination from an index from our matrix
-	 * construction
+	 * Precomputes the source city and the task destination of every state
 	 * 
-	 * @param index
-	 * @param size
-	 * 
-	 *            Construction :
-	 * 
-	 *            From an array with entries: city 0 -> city, 1 city 0 -> city 2,
-	 *            ... city 0 -> null, city 1 -> city 0, city 1 -> city 2, ... city n -> city n-1
+	 * Construction :
 	 * 
-	 * @return the source and destination corresponding to the index
+	 * From an array with entries: city 0 -> city 1, city 0 -> city 2, ... city
+	 * 0 -> null, city 1 -> city 0, city 1 -> city 2, ... city n -> city n-1
 	 */
-	public Integer[] cityAndTaskFromIndex(int index, int size) {
-		int source = (int) Math.floor(index / size);
-		Integer destination = (index + source) % (size + 1);
-		if (destination >= source) {
-			destination = (destination + 1) % (size + 1);
-		}
-		if (destination == size) {
-			destination = null;
+	protected void computeStates() {
+		stateSource = new int[numStates];
+		stateDestination = new int[numStates];
+		for (int source = 0; source < numCities; source++) {
+			int index = source * numCities;
+			for (int destination = 0; destination < numCities; destination++) {
+				if (destination != source) {
+					stateSource[index] = source;
+					stateDestination[index] = destination;
+					index++;
+				}
+			}
+			stateSource[index] = source;
+			stateDestination[index] = NO_TASK;
 		}
-		return new Integer[] { source, destination };
 	}
 
 	/**
 	 * Gives the index from a source and a destination in our matrix
-	 * construction
-	 * 
-	 * Construction :
-	 * 
-	 * From an array with entries: city 0 -> city, 1 city 0 -> city 2, ... city 0 -> null, 
-	 * city 1 -> city, 0 city 1 -> city 2, ... city n -> city n-1
+	 * construction (see computeStates())
 	 * 
 	 * @param citySource
 	 * @param taskDestination
-	 * @param numberOfCities
-	 * @return
+	 *            NO_TASK if there is no task
+	 * @return the index of the state
 	 */
-	public int indexFromCityAndTask(int citySource, Integer taskDestination, int numberOfCities) {
-		int startIndexCitySource = citySource * (numberOfCities);
-		int returnedIndex;
-		if (taskDestination != null) {
-			returnedIndex = startIndexCitySource + taskDestination;
-			if (citySource < taskDestination) {
-				// If the source id is bigger than the destination id,
-				// we must remove 1 because the element city i -> city i doesn't
-				// exist
-				returnedIndex--;
-			}
+	public int indexFromCityAndTask(int citySource, int taskDestination) {
+		int startIndexCitySource = citySource * numCities;
+		if (taskDestination == NO_TASK) {
+			return startIndexCitySource + numCities - 1;
+		} else if (citySource < taskDestination) {
+			// If the source id is smaller than the destination id,
+			// we must remove 1 because the element city i -> city i doesn't
+			// exist
+			return startIndexCitySource + taskDestination - 1;
 		} else {
-			returnedIndex = startIndexCitySource + numberOfCities - 1;
+			return startIndexCitySource + taskDestination;
 		}
-		return returnedIndex;
 	}
 
 	/**
@@ -231,30 +476,19 @@ public abstract class ReactiveAbstractAgent implements ReactiveBehavior {
 	 * @param cityB
 	 * @return distance between 2 cities
 	 */
-	public double distanceBetween(List<City> cities, int cityA, int cityB) {
-		return cities.get(cityA).distanceTo(cities.get(cityB));
-	}
-
-	/**
-	 * Returns a boolean that indicates if two cities are closest neighbours
-	 * 
-	 * @param cityA
-	 * @param cityB
-	 * @return boolean that indicates if two cities are closest neighbours
-	 */
-	protected boolean areClosestNeighbours(int cityA, int cityB) {
-		return cities.get(cityB).equals(closestNeighbour(cities.get(cityA)));
+	public double distanceBetween(int cityA, int cityB) {
+		return distances[cityPairOffset(cityA, cityB)];
 	}
 
 	/****** The following functions are used for debugging purpose *******/
 
 	@SuppressWarnings("unused")
-	protected void printMatrix(Number[][] matrix, int sizeX, int sizeY) {
+	protected void printMatrix(double[] matrix, int sizeX, int sizeY) {
 		int i = 0;
 		int j = 0;
 		for (i = 0; i < sizeX; i++) {
 			for (j = 0; j < sizeY; j++) {
-				System.out.print(matrix[i][j] + " ");
+				System.out.print(matrix[i * sizeY + j] + " ");
 			}
 			System.out.println("");
 		}
@@ -1,5 +1,13 @@
 package template;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import logist.agent.Agent;
 import logist.behavior.ReactiveBehavior;
 import logist.plan.Action;
@@ -10,23 +18,44 @@ import logist.task.Task;
 import logist.task.TaskDistribution;
 import logist.topology.Topology;
 import logist.topology.Topology.City;
+import template.ReactiveStats.Level;
 
 public class ReactiveAgent extends ReactiveAbstractAgent implements ReactiveBehavior {
 
+	enum Solver {
+		VALUE_ITERATION, GAUSS_SEIDEL, PRIORITIZED_SWEEPING, POLICY_ITERATION
+	}
+
+	private Solver solver;
+	private PolicyCache policyCache;
+
 	@Override
 	public void setup(Topology topology, TaskDistribution td, Agent agent) {
 
 		super.setup(topology, td, agent);
 
-		T = computeT();
+		// Throws IllegalArgumentException if the solver is unknown
+		String solverName = agent.readProperty("solver", String.class, "VALUE_ITERATION");
+		solver = Solver.valueOf(solverName.toUpperCase().replace('-', '_'));
+
+		// Directory of the policy cache, "none" disables it
+		String cacheDirectory = agent.readProperty("policy-cache", String.class, "cache/");
+		policyCache = cacheDirectory.equalsIgnoreCase("none") ? null : new PolicyCache(cacheDirectory);
 
 		computeVAndBest();
-		
-		System.out.println("Reactive Agent " + agent.id() + " (vehicle " + agent.vehicles().get(0).name()
-				+ ") with lambda=" + discount + "\nBest(x) = 0 means move without the task");
-		for (int i = 0; i < numStates; i++) {
-			if (Best[i] == 0) {
-				System.out.println("V[" + i + "] : " + V[i] + ", Best[" + i + "] : " + Best[i]);
+
+		if (stats.isEnabled(Level.SUMMARY)) {
+			for (Vehicle vehicle : agent.vehicles()) {
+				stats.log(Level.SUMMARY, "Reactive Agent " + agent.id() + " (vehicle " + vehicle.name()
+						+ ", cost per km " + vehicle.costPerKm() + ") with lambda=" + discount);
+			}
+		}
+		if (stats.isEnabled(Level.DEBUG)) {
+			stats.log(Level.DEBUG, "Best(x) = " + PICKUP + " means take the task, otherwise move without it");
+			for (int i = 0; i < numStates; i++) {
+				if (Best[i] != PICKUP) {
+					stats.log(Level.DEBUG, "V[" + i + "] : " + V[i] + ", Best[" + i + "] : " + Best[i]);
+				}
 			}
 		}
 	}
@@ -34,126 +63,151 @@ public class ReactiveAgent extends ReactiveAbstractAgent implements ReactiveBeha
 	@Override
 	public Action act(Vehicle vehicle, Task availableTask) {
 		Action action;
+		ReactivePolicy policy = policyOf(vehicle);
+		double[] R = policy.R;
 		City currentCity = vehicle.getCurrentCity();
 		int indexBest;
+		double reward;
 
 		if (availableTask == null) {
-			// If the task is null, move to the closest neighbour
-			indexBest = indexFromCityAndTask(currentCity.id, null, numCities);
-			System.out.println(
-					vehicle.name() + " there is no task from " + currentCity + ". Benefit : " + R[indexBest][0]);
-			action = new Move(closestNeighbour(currentCity));
-			generalReward += R[indexBest][0];
+			indexBest = indexFromCityAndTask(currentCity.id, NO_TASK);
+		} else {
+			indexBest = indexFromCityAndTask(currentCity.id, availableTask.deliveryCity.id);
+		}
+		int best = policy.Best[indexBest];
+		reward = R[stateActionOffset(indexBest, best)];
+
+		if (availableTask == null) {
+			// If the task is null, move to the best neighbour (the closest one
+			// with the CLOSEST action space)
+			City next = cities.get(moveTarget(currentCity.id, best));
+			action = new Move(next);
+			stats.recordAction(reward, false);
+			if (stats.isEnabled(Level.ACTIONS)) {
+				stats.log(Level.ACTIONS, vehicle.name() + " there is no task from " + currentCity + ", moves to "
+						+ next + ". Benefit : " + reward);
+			}
+		} else if (best != PICKUP) {
+			// If the best solution is to move, move to the best neighbour
+			City next = cities.get(moveTarget(currentCity.id, best));
+			action = new Move(next);
+			stats.recordAction(reward, false);
+			if (stats.isEnabled(Level.ACTIONS)) {
+				stats.log(Level.ACTIONS, vehicle.name() + " does not take the task from " + availableTask.pickupCity
+						+ " to " + availableTask.deliveryCity + ", moves to " + next + ". Benefit : " + reward);
+			}
 		} else {
-			indexBest = indexFromCityAndTask(currentCity.id, availableTask.deliveryCity.id, numCities);
-			if (Best[indexBest] == 0) {
-				// If the best solution is to move, move to the closest
-				// neighbour
-				System.out.println(vehicle.name() + " does not take the task from " + availableTask.pickupCity + " to "
-						+ availableTask.deliveryCity + ". Benefit : " + R[indexBest][0]);
-				action = new Move(closestNeighbour(currentCity));
-				generalReward += R[indexBest][0];
-			} else {
-				// else pickup the task
-				System.out.println(vehicle.name() + " takes the task from " + availableTask.pickupCity + " to "
-						+ availableTask.deliveryCity + ". Benefit : " + R[indexBest][1]);
-				action = new Pickup(availableTask);
-				generalReward += R[indexBest][1];
+			// else pickup the task
+			action = new Pickup(availableTask);
+			stats.recordAction(reward, true);
+			if (stats.isEnabled(Level.ACTIONS)) {
+				stats.log(Level.ACTIONS, vehicle.name() + " takes the task from " + availableTask.pickupCity + " to "
+						+ availableTask.deliveryCity + ". Benefit : " + reward);
 			}
 		}
-		nbOfActions++;
-		//System.out.println("Reactive Agent, vehicle : " + vehicle.name() + ", general reward : " + generalReward);
-		System.out.println(
-				"Reactive Agent, vehicle : " + vehicle.name() + ", average reward : " + generalReward / nbOfActions);
-		System.out.println("nbOfActions Reactive : " + nbOfActions);
+		if (stats.isEnabled(Level.ACTIONS)) {
+			stats.log(Level.ACTIONS, "Reactive Agent, vehicle : " + vehicle.name() + ", average reward : "
+					+ stats.getAverageReward() + ", nbOfActions : " + stats.getActions());
+		}
 		return action;
 	}
 	
 	/**
-	 * Compute the matrix T(s,a,s')
-	 * @return T(s,a,s')
+	 * Compute V(S) and Best(S) of every policy with the solver given in
+	 * agents.xml. The policies of vehicles with different costs per km are
+	 * computed concurrently.
 	 */
-	private Double[][][] computeT() {
-		Double T[][][] = new Double[numStates][2][numStates];
-
-		// When the action is to move without taking the task
-		for (int i = 0; i < numStates; i++) {
-			Integer ctA[] = cityAndTaskFromIndex(i, numCities);
-			for (int j = 0; j < numStates; j++) {
-				Integer ctB[] = cityAndTaskFromIndex(j, numCities);
-
-				// Probability is non zero only when B is the nearest neighbour
-				// of A
-				if (ctA[0] != ctB[0] && areClosestNeighbours(ctA[0], ctB[0])) {
-					if (ctB[1] == null) {
-						// Probability that task at B is null
-						T[i][0][j] = (1 - pTask[ctB[0]]);
-					} else {
-						T[i][0][j] = p[ctB[0]][ctB[1]];
+	private void computeVAndBest() {
+		long startTime = System.currentTimeMillis();
+		int sweeps = 0;
+		if (policies.length == 1) {
+			sweeps = computeVAndBest(policies[0]);
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(
+					Math.min(policies.length, Runtime.getRuntime().availableProcessors()));
+			List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(policies.length);
+			for (final ReactivePolicy policy : policies) {
+				tasks.add(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						return computeVAndBest(policy);
 					}
-				} else {
-					T[i][0][j] = new Double(0);
+				});
+			}
+			try {
+				for (Future<Integer> f : executor.invokeAll(tasks)) {
+					sweeps += f.get();
 				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Policy computation interrupted", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Policy computation failed", e.getCause());
+			} finally {
+				executor.shutdown();
 			}
 		}
-
-		// When the action is to deliver the task
-		for (int i = 0; i < numStates; i++) {
-			Integer ctA[] = cityAndTaskFromIndex(i, numCities);
-			for (int j = 0; j < numStates; j++) {
-				Integer ctB[] = cityAndTaskFromIndex(j, numCities);
-
-				// Probability is non zero only when task from A goes for B
-				if (ctA[0] != ctB[0] && ctA[1] == ctB[0]) {
-					if (ctB[1] == null) {
-						T[i][1][j] = (1 - pTask[ctB[0]]);
-					} else {
-						T[i][1][j] = p[ctB[0]][ctB[1]];
-					}
-				} else {
-					T[i][1][j] = 0.0;
+		long endTime = System.currentTimeMillis();
+		stats.recordSolver(sweeps, endTime - startTime);
+		if (stats.isEnabled(Level.SUMMARY)) {
+			stats.log(Level.SUMMARY, "Solver " + solver + ": " + policies.length + " policies, " + sweeps
+					+ " sweeps in " + (endTime - startTime) + " ms (" + threads + " thread(s))");
+			for (ReactivePolicy policy : policies) {
+				double averageV = 0;
+				for (double value : policy.V) {
+					averageV += value / numStates;
 				}
+				stats.log(Level.SUMMARY, "Action space " + actionSpace + " (" + numActions + " actions), cost per km "
+						+ policy.costPerKm + ": average V(S) = " + averageV);
 			}
 		}
 
-		return T;
+		V = policies[0].V;
+		Best = policies[0].Best;
 	}
 
 	/**
-	 * Compute V(S) and Best(S)
+	 * Compute V(S) and Best(S) of a policy, or load them from the cache
+	 * 
+	 * @param policy
+	 * @return the number of sweeps of the solver, 0 if loaded from the cache
 	 */
-	private void computeVAndBest() {
-		V = new double[numStates];
-		Best = new int[numStates];
-		double[] oldV = new double[numStates];
-
-		// Initialise V
-		for (int i = 0; i < numStates; i++) {
-			V[i] = 0.0;
-			oldV[i] = 1.0;
+	private int computeVAndBest(ReactivePolicy policy) {
+		byte[] key = null;
+		if (policyCache != null) {
+			key = policyCache.key(this, policy.R, solver.name());
+			if (policyCache.load(key, policy.V, policy.Best)) {
+				stats.log(Level.SUMMARY, "Policy for cost per km " + policy.costPerKm + " loaded from the cache");
+				return 0;
+			}
 		}
 
-		double[][] Q = new double[numStates][numActions];
+		ReactiveSolver reactiveSolver;
+		switch (solver) {
+		case VALUE_ITERATION:
+			reactiveSolver = new ValueIterationSolver();
+			break;
+		case GAUSS_SEIDEL:
+			reactiveSolver = new GaussSeidelSolver();
+			break;
+		case PRIORITIZED_SWEEPING:
+			reactiveSolver = new PrioritizedSweepingSolver();
+			break;
+		case POLICY_ITERATION:
+			reactiveSolver = new PolicyIterationSolver();
+			break;
+		default:
+			throw new AssertionError("Solver does not exist.");
+		}
 
-		int loops = 0;
-		while (computeDifference(oldV, V) > EPSILON) {
-			oldV = V.clone();
-			for (int i = 0; i < numStates; i++) {
-				for (int j = 0; j < numActions; j++) {
-					// sum over s'
-					double TsaV = 0;
-					for (int k = 0; k < numStates; k++) {
-						TsaV = TsaV + (T[i][j][k] * oldV[k]);
-					}
+		int sweeps = reactiveSolver.solve(this, policy.R, policy.V, policy.Best);
+		if (sweeps >= maxIterations) {
+			System.err.println("Warning: the solver stopped after " + maxIterations + " sweeps without converging");
+		}
 
-					Q[i][j] = R[i][j] + discount * TsaV;
-				}
-				double[] best = max(Q[i]);
-				V[i] = best[0];
-				Best[i] = (int) best[1];
-			}
-			loops++;
+		if (policyCache != null) {
+			policyCache.store(key, policy.V, policy.Best);
 		}
-		System.out.println("Number of loops: " + loops);
+		return sweeps;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,22 @@
+package template;
+
+/**
+ * R(s,a), V(S) and Best(S) of the vehicles of an agent sharing the same cost
+ * per km. The states and the transitions do not depend on the vehicle, so they
+ * are shared by all the policies of the agent.
+ */
+class ReactivePolicy {
+
+	final int costPerKm;
+	// R(s,a) indexed with stateActionOffset(state, action)
+	final double[] R;
+	final double[] V;
+	final int[] Best;
+
+	public ReactivePolicy(int costPerKm, double[] R, int numStates) {
+		this.costPerKm = costPerKm;
+		this.R = R;
+		this.V = new double[numStates];
+		this.Best = new int[numStates];
+	}
+}
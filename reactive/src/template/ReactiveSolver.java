@@ -0,0 +1,24 @@
+package template;
+
+/**
+ * Computes V(S) and Best(S) of the MDP built by a reactive agent
+ */
+interface ReactiveSolver {
+
+	/**
+	 * Computes V(S) and Best(S) for the rewards R(s,a) and the transitions
+	 * T(s,a,s') of the model, stopping when V(S) changes by less than
+	 * model.epsilon or after model.maxIterations sweeps
+	 * 
+	 * @param model
+	 *            agent holding the states and the transitions
+	 * @param R
+	 *            R(s,a) indexed with model.stateActionOffset(state, action)
+	 * @param V
+	 *            filled with V(S)
+	 * @param Best
+	 *            filled with Best(S)
+	 * @return the number of sweeps over the states
+	 */
+	int solve(ReactiveAbstractAgent model, double[] R, double[] V, int[] Best);
+}
@@ -0,0 +1,115 @@
+package template;
+
+/**
+ * Counters and leveled console output of a reactive agent. The counters are
+ * primitive fields updated on every action, the messages are only built and
+ * printed when their level is enabled, and the counters are dumped once at the
+ * end of the run.
+ */
+class ReactiveStats {
+
+	enum Level {
+		// nothing is printed
+		NONE,
+		// setup summary and counters at the end of the run
+		SUMMARY,
+		// plus one line per action
+		ACTIONS,
+		// plus V(S) and Best(S) after setup
+		DEBUG
+	}
+
+	private final String name;
+	private final Level level;
+
+	private double reward = 0.0;
+	private long actions = 0;
+	private long pickups = 0;
+	private int sweeps = 0;
+	private long solverTime = 0;
+
+	public ReactiveStats(String name, Level level) {
+		this.name = name;
+		this.level = level;
+		if (level != Level.NONE) {
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					dump();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Tells if messages of the given level are printed. Callers test it before
+	 * building a message so that a disabled level costs nothing.
+	 * 
+	 * @param messageLevel
+	 * @return true if the messages are printed
+	 */
+	public boolean isEnabled(Level messageLevel) {
+		return level != Level.NONE && level.compareTo(messageLevel) >= 0;
+	}
+
+	/**
+	 * Prints a message if its level is enabled
+	 * 
+	 * @param messageLevel
+	 * @param message
+	 */
+	public void log(Level messageLevel, String message) {
+		if (isEnabled(messageLevel)) {
+			System.out.println(message);
+		}
+	}
+
+	/**
+	 * Records the computation of V(S) and Best(S)
+	 * 
+	 * @param sweeps
+	 *            number of sweeps over the states
+	 * @param time
+	 *            wall time in ms
+	 */
+	public void recordSolver(int sweeps, long time) {
+		this.sweeps = sweeps;
+		this.solverTime = time;
+	}
+
+	/**
+	 * Records an action and its reward
+	 * 
+	 * @param actionReward
+	 * @param pickup
+	 *            true if a task was picked up
+	 */
+	public void recordAction(double actionReward, boolean pickup) {
+		reward += actionReward;
+		actions++;
+		if (pickup) {
+			pickups++;
+		}
+	}
+
+	public double getReward() {
+		return reward;
+	}
+
+	public long getActions() {
+		return actions;
+	}
+
+	public double getAverageReward() {
+		return actions == 0 ? 0.0 : reward / actions;
+	}
+
+	/**
+	 * Prints the counters
+	 */
+	public void dump() {
+		System.out.println(name + ": " + actions + " actions (" + pickups + " pickups), reward : " + reward
+				+ ", average reward : " + getAverageReward() + ", solver : " + sweeps + " sweeps in " + solverTime
+				+ " ms");
+	}
+}
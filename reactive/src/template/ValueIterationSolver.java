@@ -0,0 +1,148 @@
+package template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Synchronous (Jacobi) value iteration: each loop computes the new V(S) from
+ * the values of the previous loop only, so the states can be split in one
+ * range per thread
+ */
+class ValueIterationSolver implements ReactiveSolver {
+
+	@Override
+	public int solve(ReactiveAbstractAgent model, double[] R, double[] V, int[] Best) {
+		double[] newV = V;
+		double[] oldV = new double[model.numStates];
+		double[] expectedV = new double[model.numCities];
+		ExecutorService executor = null;
+		if (model.threads > 1) {
+			executor = Executors.newFixedThreadPool(model.threads);
+		}
+
+		int loops = 0;
+		double difference;
+		try {
+			do {
+				// Swap the buffers instead of cloning V at each loop
+				double[] swap = oldV;
+				oldV = newV;
+				newV = swap;
+				if (executor == null) {
+					computeExpectedV(model, 0, model.numCities, oldV, expectedV);
+					difference = sweep(model, R, 0, model.numStates, oldV, newV, Best, expectedV);
+				} else {
+					difference = parallelSweep(executor, model, R, oldV, newV, Best, expectedV);
+				}
+				loops++;
+			} while (difference > model.epsilon && loops < model.maxIterations);
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+		}
+
+		if (newV != V) {
+			System.arraycopy(newV, 0, V, 0, V.length);
+		}
+		return loops;
+	}
+
+	/**
+	 * Computes the expected value of arriving in each city in [fromCity,
+	 * toCity)
+	 * 
+	 * @param model
+	 * @param fromCity
+	 * @param toCity
+	 * @param V
+	 * @param expectedV
+	 */
+	private void computeExpectedV(ReactiveAbstractAgent model, int fromCity, int toCity, double[] V,
+			double[] expectedV) {
+		for (int c = fromCity; c < toCity; c++) {
+			expectedV[c] = model.expectedValue(c, V);
+		}
+	}
+
+	/**
+	 * Updates V(s) and Best(s) for the states in [fromState, toState) from
+	 * the expected values of the previous loop
+	 * 
+	 * @return the maximum difference between the old and the new values
+	 */
+	private double sweep(ReactiveAbstractAgent model, double[] R, int fromState, int toState, double[] oldV,
+			double[] newV, int[] Best, double[] expectedV) {
+		double difference = 0;
+		for (int i = fromState; i < toState; i++) {
+			double bestQ = 0;
+			int bestAction = -1;
+			for (int j = 0; j < model.numActions; j++) {
+				double Q = model.q(R, expectedV, i, j);
+				if (bestAction < 0 || Q > bestQ) {
+					bestQ = Q;
+					bestAction = j;
+				}
+			}
+			newV[i] = bestQ;
+			Best[i] = bestAction;
+			difference = Math.max(difference, Math.abs(bestQ - oldV[i]));
+		}
+		return difference;
+	}
+
+	/**
+	 * Runs one loop of value iteration, splitting the cities and the states in
+	 * one range per thread
+	 * 
+	 * @return the maximum difference between the old and the new values
+	 */
+	private double parallelSweep(ExecutorService executor, final ReactiveAbstractAgent model, final double[] R,
+			final double[] oldV, final double[] newV, final int[] Best, final double[] expectedV) {
+		int threads = model.threads;
+		int numCities = model.numCities;
+		List<Callable<Double>> expectations = new ArrayList<Callable<Double>>(threads);
+		List<Callable<Double>> updates = new ArrayList<Callable<Double>>(threads);
+		for (int t = 0; t < threads; t++) {
+			final int fromCity = numCities * t / threads;
+			final int toCity = numCities * (t + 1) / threads;
+			final int fromState = fromCity * numCities;
+			final int toState = toCity * numCities;
+			expectations.add(new Callable<Double>() {
+				@Override
+				public Double call() {
+					computeExpectedV(model, fromCity, toCity, oldV, expectedV);
+					return 0.0;
+				}
+			});
+			updates.add(new Callable<Double>() {
+				@Override
+				public Double call() {
+					return sweep(model, R, fromState, toState, oldV, newV, Best, expectedV);
+				}
+			});
+		}
+
+		double difference = 0;
+		try {
+			// All the expected values must be known before updating V
+			for (Future<Double> f : executor.invokeAll(expectations)) {
+				f.get();
+			}
+			for (Future<Double> f : executor.invokeAll(updates)) {
+				difference = Math.max(difference, f.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Value iteration interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Value iteration failed", e.getCause());
+		}
+		return difference;
+	}
+}